@@ -0,0 +1,83 @@
+package com.study.querydsl.benchmark;
+
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+//벤치마크용 인메모리 H2
+//스프링 부트 자동설정 없이 엔티티 매니저 팩토리만 직접 띄워서 jmh 단독 jar 에서도 돌아가게 한다.
+public class BenchmarkDatabase {
+
+    public static final int TEAM_COUNT = 10;
+
+    private final LocalContainerEntityManagerFactoryBean factoryBean;
+
+    private BenchmarkDatabase(LocalContainerEntityManagerFactoryBean factoryBean) {
+        this.factoryBean = factoryBean;
+    }
+
+    //회원 size 명을 팀 10개에 나눠 넣는다. 나이는 0~99 로 고르게 분포한다.
+    public static BenchmarkDatabase seeded(int size) {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:bench" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", true);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hibernate.hbm2ddl.auto", "create");
+        properties.put("hibernate.jdbc.batch_size", 1000);
+
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan("com.study.querydsl.entity");
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(properties);
+        factoryBean.afterPropertiesSet();
+
+        BenchmarkDatabase database = new BenchmarkDatabase(factoryBean);
+        database.seed(size);
+        return database;
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return factoryBean.getObject();
+    }
+
+    public EntityManager createEntityManager() {
+        return getEntityManagerFactory().createEntityManager();
+    }
+
+    public void close() {
+        factoryBean.destroy();
+        ((SingleConnectionDataSource) factoryBean.getDataSource()).destroy();
+    }
+
+    private void seed(int size) {
+        EntityManager em = createEntityManager();
+        em.getTransaction().begin();
+        Long[] teamIds = new Long[TEAM_COUNT];
+        for (int i = 0; i < TEAM_COUNT; i++) {
+            Team team = new Team("team" + i);
+            em.persist(team);
+            teamIds[i] = team.getId();
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            Member member = new Member("member" + i, random.nextInt(100));
+            member.setTeam(em.getReference(Team.class, teamIds[i % TEAM_COUNT]));
+            em.persist(member);
+            if (i % 1000 == 999) {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+}
@@ -0,0 +1,62 @@
+package com.study.querydsl.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.querydsl.dto.MemberTeamBinaryCodec;
+import com.study.querydsl.dto.MemberTeamDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//MemberTeamDto 목록 인코딩/디코딩 비교 : JSON(ObjectMapper) vs application/x-member-binary
+//DB 없이 미리 만든 목록으로 포맷 비용만 본다. 응답 크기는 setUp 에서 출력한다
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinaryCodecBenchmark {
+
+    @Param({"20", "1000", "20000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<MemberTeamDto> content;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        content = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long teamId = i % BenchmarkDatabase.TEAM_COUNT;
+            content.add(new MemberTeamDto((long) i + 1, "member" + i, i % 100, teamId + 1, "team" + teamId));
+        }
+        json = objectMapper.writeValueAsBytes(content);
+        binary = MemberTeamBinaryCodec.encode(content);
+        System.out.printf("%nsize=%d json=%d bytes binary=%d bytes%n", size, json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return objectMapper.writeValueAsBytes(content);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return MemberTeamBinaryCodec.encode(content);
+    }
+
+    //MemberTeamDto 는 기본 생성자가 없어서 ObjectMapper 로 바로 못 읽으므로 JsonNode 트리로 파싱하는 비용을 잰다
+    @Benchmark
+    public JsonNode decodeJson() throws IOException {
+        return objectMapper.readTree(json);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> decodeBinary() throws IOException {
+        return MemberTeamBinaryCodec.decode(binary).getContent();
+    }
+}
@@ -0,0 +1,91 @@
+package com.study.querydsl.benchmark;
+
+import com.study.querydsl.cache.MemberCountCache;
+import com.study.querydsl.cache.MemberSearchCache;
+import com.study.querydsl.config.CountQueryExecutor;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.repository.MemberJpaRepository;
+import com.study.querydsl.repository.MemberRepositoryImpl;
+import com.study.querydsl.repository.MemberSearchTemplates;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//리파지토리 검색 경로 비교
+//- MemberJpaRepository.search(모양별 JPQL 캐시) vs searchByBuilder(매번 BooleanBuilder 로 조립)
+//  search 는 결과 캐시 크기를 0 으로 둬서 쿼리 경로만 비교하고, 캐시 적중은 jpaRepositorySearchCached 로 따로 본다
+//- MemberRepositoryImpl 의 QuerydslRepositorySupport.from() vs JPAQueryFactory
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MemberSearchBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private BenchmarkDatabase database;
+    private EntityManager em;
+    private MemberJpaRepository memberJpaRepository;
+    private MemberJpaRepository cachedMemberJpaRepository;
+    private MemberRepositoryImpl memberRepository;
+    private MemberSearchCondition condition;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(size);
+        em = database.createEntityManager();
+
+        MemberSearchTemplates searchTemplates = new MemberSearchTemplates(em);
+        memberJpaRepository = new MemberJpaRepository(em, searchTemplates, new MemberSearchCache(0));
+        cachedMemberJpaRepository = new MemberJpaRepository(em, searchTemplates, new MemberSearchCache(1000));
+        memberRepository = new MemberRepositoryImpl(em, new MemberCountCache(1000, Duration.ofMinutes(1)), searchTemplates,
+                null, null, (CountQueryExecutor) null);
+        memberRepository.setEntityManager(em);
+
+        //팀 하나 + 나이 범위 : 전체의 약 2%
+        condition = new MemberSearchCondition();
+        condition.setTeamName("team3");
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(39);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() {
+        em.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        database.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> jpaRepositorySearch() {
+        return memberJpaRepository.search(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> jpaRepositorySearchCached() {
+        return cachedMemberJpaRepository.search(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> jpaRepositorySearchByBuilder() {
+        return memberJpaRepository.searchByBuilder(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> repositorySupportFrom() {
+        return memberRepository.searchByRepositorySupport(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> queryFactory() {
+        return memberRepository.search(condition);
+    }
+}
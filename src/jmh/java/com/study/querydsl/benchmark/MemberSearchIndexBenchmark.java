@@ -0,0 +1,76 @@
+package com.study.querydsl.benchmark;
+
+import com.study.querydsl.cache.MemberSearchIndex;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.repository.MemberJpaRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+//MemberSearchIndex 의 이름 앞부분/일부 검색 (건수 + 첫 페이지 id 20개)
+//천만명을 H2 에 넣고 읽으면 오래 걸리므로 DB 대신 BenchmarkDatabase 와 같은 모양의 행을 바로 만들어서 인덱스를 채운다.
+//- 글자 1~2개 : 앞 글자/글자별 행 (흔한 글자는 BitSet 복사)
+//- 글자 3개 이상 : 가장 드문 trigram 의 후보 행만 이름과 비교
+//천만명은 힙이 3GB 넘게 필요하다 : java -jar build/libs/*-jmh.jar MemberSearchIndexBenchmark -p size=10000000
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MemberSearchIndexBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private int size;
+
+    //m : 모든 회원, 7 : 절반 가까이, 12 : 약 5%, r12 / ber99 : 드문 글자
+    @Param({"prefix:m", "prefix:me", "prefix:member12", "contains:7", "contains:12", "contains:r12", "contains:ber99"})
+    private String pattern;
+
+    private MemberSearchIndex index;
+    private MemberSearchCondition condition;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        index = new MemberSearchIndex(new GeneratedRows(size), 1000);
+        index.rebuild().get();
+
+        condition = new MemberSearchCondition();
+        String text = pattern.substring(pattern.indexOf(':') + 1);
+        if (pattern.startsWith("prefix:")) {
+            condition.setUsernamePrefix(text);
+        } else {
+            condition.setUsernameContains(text);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.destroy();
+    }
+
+    @Benchmark
+    public MemberSearchIndex.Result search() {
+        return index.search(condition, 0, 20);
+    }
+
+    //BenchmarkDatabase.seed 와 같은 행 (memberId, "member" + i, 0~99 나이, 팀 10개)
+    private static class GeneratedRows extends MemberJpaRepository {
+
+        private final int size;
+
+        GeneratedRows(int size) {
+            super(null, null, null);
+            this.size = size;
+        }
+
+        @Override
+        public void streamSearchRows(MemberSearchCondition condition, int fetchSize, Consumer<Object[]> rowConsumer) {
+            Random random = new Random(42);
+            for (int i = 0; i < size; i++) {
+                long teamId = i % BenchmarkDatabase.TEAM_COUNT + 1;
+                rowConsumer.accept(new Object[]{i + 1L, "member" + i, random.nextInt(100), teamId, "team" + (teamId - 1)});
+            }
+        }
+    }
+}
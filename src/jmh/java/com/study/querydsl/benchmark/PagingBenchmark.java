@@ -0,0 +1,66 @@
+package com.study.querydsl.benchmark;
+
+import com.study.querydsl.cache.MemberCountCache;
+import com.study.querydsl.config.CountQueryExecutor;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.repository.MemberRepositoryImpl;
+import com.study.querydsl.repository.MemberSearchTemplates;
+import com.study.querydsl.repository.PagingStrategy;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+//searchPageComplex 컨텐츠 조회 방식 비교 (회원 10만명, 페이지 크기 20)
+//카운트는 캐시되므로 컨텐츠 쿼리 비용만 비교된다. 나이 조건으로 90% 가 남는다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PagingBenchmark {
+
+    @Param({"0", "1000", "4000"})
+    private int page;
+
+    @Param({"OFFSET", "DEFERRED_JOIN"})
+    private PagingStrategy strategy;
+
+    private BenchmarkDatabase database;
+    private EntityManager em;
+    private MemberRepositoryImpl memberRepository;
+    private MemberSearchCondition condition;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(100_000);
+        em = database.createEntityManager();
+        //H2 는 데이터가 그대로면 같은 쿼리의 결과를 재사용하므로 매번 실제로 실행하도록 끈다
+        em.getTransaction().begin();
+        em.createNativeQuery("SET OPTIMIZE_REUSE_RESULTS 0").executeUpdate();
+        em.getTransaction().commit();
+        memberRepository = new MemberRepositoryImpl(em, new MemberCountCache(1000, Duration.ofMinutes(10)),
+                new MemberSearchTemplates(em), null, null, (CountQueryExecutor) null);
+        memberRepository.setEntityManager(em);
+        condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() {
+        em.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageComplex() {
+        return memberRepository.searchPageComplex(condition, PageRequest.of(page, 20), strategy);
+    }
+}
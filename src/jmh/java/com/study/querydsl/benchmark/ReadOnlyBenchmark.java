@@ -0,0 +1,81 @@
+package com.study.querydsl.benchmark;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.entity.Member;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.study.querydsl.entity.QMember.member;
+
+//엔티티 조회 후 트랜잭션 커밋까지의 비용 비교 (gc 프로파일러의 alloc.rate.norm 으로 메모리도 같이 본다)
+//- managed : 일반 쓰기 트랜잭션. 엔티티마다 스냅샷을 만들고 커밋때 전부 더티체킹한다
+//- readOnlyHint : 쿼리에 읽기 전용 힌트(MemberJpaRepository 의 엔티티 조회)
+//- readOnlySession : 세션 기본값을 읽기 전용 + 플러시 MANUAL(@Transactional(readOnly = true) 가 하는 것)
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadOnlyBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private BenchmarkDatabase database;
+    private EntityManager em;
+    private JPAQueryFactory queryFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(size);
+        em = database.createEntityManager();
+        queryFactory = new JPAQueryFactory(em);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        database.close();
+    }
+
+    @Benchmark
+    public int managed() {
+        em.getTransaction().begin();
+        List<Member> members = queryFactory.selectFrom(member).fetch();
+        em.getTransaction().commit();
+        em.clear();
+        return members.size();
+    }
+
+    @Benchmark
+    public int readOnlyHint() {
+        em.getTransaction().begin();
+        List<Member> members = queryFactory.selectFrom(member)
+                .setHint(QueryHints.READ_ONLY, true)
+                .fetch();
+        em.getTransaction().commit();
+        em.clear();
+        return members.size();
+    }
+
+    @Benchmark
+    public int readOnlySession() {
+        Session session = em.unwrap(Session.class);
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        try {
+            em.getTransaction().begin();
+            List<Member> members = queryFactory.selectFrom(member).fetch();
+            em.getTransaction().commit();
+            return members.size();
+        } finally {
+            em.clear();
+            session.setDefaultReadOnly(false);
+            session.setHibernateFlushMode(FlushMode.AUTO);
+        }
+    }
+}
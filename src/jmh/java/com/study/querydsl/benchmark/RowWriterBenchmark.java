@@ -0,0 +1,103 @@
+package com.study.querydsl.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.querydsl.cache.MemberSearchCache;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.dto.MemberTeamJson;
+import com.study.querydsl.repository.MemberJpaRepository;
+import com.study.querydsl.repository.MemberSearchTemplates;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//검색 결과를 JSON 으로 쓰기까지의 비용 비교 (gc 프로파일러의 alloc.rate.norm 으로 메모리도 같이 본다)
+//- dto : /v1/members - List<MemberTeamDto> 를 만들고 ObjectMapper 가 직렬화
+//- raw : /v1/members/raw - 조회 결과 행을 JsonGenerator 로 바로 쓴다
+//응답 크기만 세고 버리는 OutputStream 에 쓴다
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RowWriterBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private BenchmarkDatabase database;
+    private EntityManager em;
+    private MemberJpaRepository memberJpaRepository;
+    private ObjectMapper objectMapper;
+    private MemberSearchCondition condition;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(size);
+        em = database.createEntityManager();
+        memberJpaRepository = new MemberJpaRepository(em, new MemberSearchTemplates(em), new MemberSearchCache(0));
+        objectMapper = new ObjectMapper();
+        //나이 조건만 : 전체의 약 20%
+        condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(39);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        database.close();
+    }
+
+    @Benchmark
+    public long dto() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        em.getTransaction().begin();
+        try {
+            List<MemberTeamDto> result = memberJpaRepository.search(condition);
+            objectMapper.writeValue(out, result);
+        } finally {
+            em.getTransaction().commit();
+        }
+        return out.count;
+    }
+
+    @Benchmark
+    public long raw() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        em.getTransaction().begin();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            memberJpaRepository.streamSearchRows(condition, 500, row -> {
+                try {
+                    MemberTeamJson.writeRow(generator, (Long) row[0], (String) row[1], (Integer) row[2],
+                            (Long) row[3], (String) row[4]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } finally {
+            em.getTransaction().commit();
+        }
+        return out.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.study.querydsl.cache;
+
+import com.study.querydsl.dto.MemberSearchCondition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+//searchPageComplex 카운트 쿼리 결과 캐시
+//검색조건별로 LRU + TTL 로 보관하고 member, team 테이블에 쓰기가 일어나면 전부 비운다.
+@Component
+public class MemberCountCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<MemberSearchCondition, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    //무효화 도중에 계산된 카운트가 다시 들어가지 않도록 세대를 센다
+    private final AtomicLong generation = new AtomicLong();
+
+    public MemberCountCache(@Value("${member.count-cache.max-size:1000}") int maxSize,
+                            @Value("${member.count-cache.ttl:60s}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<MemberSearchCondition, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MemberSearchCondition, Entry> eldest) {
+                return size() > MemberCountCache.this.maxSize;
+            }
+        };
+    }
+
+    public long get(MemberSearchCondition condition, LongSupplier countQuery) {
+        MemberSearchCondition key = condition.normalize();
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt - now > 0) {
+                hits.incrementAndGet();
+                return entry.count;
+            }
+        }
+        misses.incrementAndGet();
+        long gen = generation.get();
+        long count = countQuery.getAsLong();
+        synchronized (entries) {
+            if (gen == generation.get()) {
+                entries.put(key, new Entry(count, System.nanoTime() + ttlNanos));
+            }
+        }
+        return count;
+    }
+
+    //캐시된 카운트만 확인하고 없으면 null (미스로 세지 않는다)
+    public Long getIfPresent(MemberSearchCondition condition) {
+        MemberSearchCondition key = condition.normalize();
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt - now > 0) {
+                hits.incrementAndGet();
+                return entry.count;
+            }
+        }
+        return null;
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+        private final long count;
+        private final long expiresAt;
+
+        private Entry(long count, long expiresAt) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
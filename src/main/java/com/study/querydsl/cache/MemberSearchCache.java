@@ -0,0 +1,303 @@
+package com.study.querydsl.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.event.MemberChange;
+import com.study.querydsl.event.MemberChangeHandler;
+import com.study.querydsl.event.MemberSnapshot;
+import com.study.querydsl.event.TeamChange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+//MemberJpaRepository.search 결과 캐시
+//Caffeine(W-TinyLFU) 으로 크기를 제한하고 엔트리마다 검색조건의 팀 이름(없으면 "*")을 태그로 달아둔다.
+//회원이 바뀌면 변경 전/후 행의 팀 태그가 붙은 엔트리 중에서 나이 범위, 회원명까지 맞는 것만 지운다.
+//벌크 연산처럼 어떤 행이 바뀌었는지 모르면 전부 지운다.
+@Component
+public class MemberSearchCache implements MemberChangeHandler {
+
+    private static final String ANY_TEAM = "*";
+    private static final Object WRITES_KEY = MemberSearchCache.class.getName() + ".WRITES";
+    private static final Object ALL = new Object();
+    //한 트랜잭션의 변경이 이보다 많으면 하나씩 기억하지 않고 끝날때 전부 지운다
+    private static final int MAX_PENDING_CHANGES = 1000;
+
+    private final long maxSize;
+    private final Cache<MemberSearchCondition, List<MemberTeamDto>> cache;
+
+    //태그 인덱스와 put 은 모두 lock 안에서만 바꾼다
+    private final Object lock = new Object();
+    private final Map<String, Set<MemberSearchCondition>> tags = new HashMap<>();
+    //캐시에 넣은 결과에서 알게된 팀 id -> 이름. 변경 이벤트의 팀이 초기화 안된 프록시일때 이름을 찾는다
+    private final Map<Long, String> teamNames = new HashMap<>();
+    private int tagged;
+    private long generation;
+
+    public MemberSearchCache(@Value("${member.search-cache.max-size:10000}") long maxSize) {
+        this.maxSize = maxSize;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public List<MemberTeamDto> get(MemberSearchCondition condition, Supplier<List<MemberTeamDto>> loader) {
+        //max-size 가 0 이면 캐시를 쓰지 않는다
+        //이 트랜잭션에서 회원/팀을 바꿨으면 커밋 전 값이 캐시에 들어가지 않도록 캐시를 거치지 않는다
+        if (maxSize == 0 || TransactionSynchronizationManager.hasResource(WRITES_KEY)) {
+            return loader.get();
+        }
+        MemberSearchCondition key = condition.normalize();
+        List<MemberTeamDto> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadGeneration;
+        synchronized (lock) {
+            loadGeneration = generation;
+        }
+        List<MemberTeamDto> loaded = freeze(loader.get());
+        synchronized (lock) {
+            //조회하는 동안 무효화가 있었으면 옛날 값일 수 있으므로 넣지 않는다
+            if (loadGeneration == generation && !TransactionSynchronizationManager.hasResource(WRITES_KEY)) {
+                tag(key);
+                cache.put(key, loaded);
+                for (MemberTeamDto row : loaded) {
+                    if (row.getTeamId() != null) {
+                        teamNames.put(row.getTeamId(), row.getTeamName());
+                    }
+                }
+            }
+        }
+        return loaded;
+    }
+
+    //캐시 히트마다 같은 리스트와 행을 돌려주므로 리스트도 행도 바꿀 수 없게 복사해서 넣는다
+    private static List<MemberTeamDto> freeze(List<MemberTeamDto> rows) {
+        List<MemberTeamDto> frozen = new ArrayList<>(rows.size());
+        for (MemberTeamDto row : rows) {
+            frozen.add(new FrozenMemberTeamDto(row));
+        }
+        return Collections.unmodifiableList(frozen);
+    }
+
+    @Override
+    public void onMemberChange(MemberChange change) {
+        invalidate(change);
+        rememberForCompletion(change);
+    }
+
+    @Override
+    public void onTeamChange(TeamChange change) {
+        //새로 만든 팀에는 아직 회원이 없다
+        if (change.getType() == MemberChange.Type.INSERT) {
+            return;
+        }
+        invalidate(change);
+        rememberForCompletion(change);
+    }
+
+    //어떤 행이 바뀌었는지 모르는 벌크 연산
+    @Override
+    public void onBulkWrite(Class<?> entityType) {
+        invalidate(ALL);
+        rememberForCompletion(ALL);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private void invalidate(Object change) {
+        synchronized (lock) {
+            generation++;
+            if (change instanceof MemberChange) {
+                MemberChange memberChange = (MemberChange) change;
+                if (memberChange.isBeforeUnknown()) {
+                    invalidateWhere(null, key -> true);
+                } else {
+                    invalidateRow(memberChange.getBefore());
+                }
+                invalidateRow(memberChange.getAfter());
+            } else if (change instanceof TeamChange) {
+                //팀 조건이 없는 엔트리에도 이 팀 회원이 들어있을 수 있다
+                TeamChange teamChange = (TeamChange) change;
+                //롤백될 수도 있으므로 새 이름을 기억하지 않고 모르는 팀으로 둔다
+                teamNames.remove(teamChange.getTeamId());
+                if (teamChange.getOldName() == null && teamChange.getType() == MemberChange.Type.UPDATE) {
+                    invalidateWhere(null, key -> true);
+                } else {
+                    invalidateWhere(teamChange.getOldName(), key -> true);
+                    if (teamChange.getNewName() != null) {
+                        invalidateWhere(teamChange.getNewName(), key -> true);
+                    }
+                    invalidateWhere(ANY_TEAM, key -> true);
+                }
+            } else {
+                cache.invalidateAll();
+                tags.clear();
+                teamNames.clear();
+                tagged = 0;
+            }
+        }
+    }
+
+    private void invalidateRow(MemberSnapshot row) {
+        if (row == null) {
+            return;
+        }
+        String teamName = row.isTeamNameKnown() ? row.getTeamName() : teamNames.get(row.getTeamId());
+        if (!row.isTeamNameKnown() && teamName == null) {
+            invalidateWhere(null, key -> covers(key, row));
+            return;
+        }
+        if (teamName != null) {
+            invalidateWhere(teamName, key -> covers(key, row));
+        }
+        invalidateWhere(ANY_TEAM, key -> covers(key, row));
+    }
+
+    //tag 가 null 이면 모든 태그를 본다
+    private void invalidateWhere(String tag, Predicate<MemberSearchCondition> affected) {
+        List<Set<MemberSearchCondition>> candidates = new ArrayList<>();
+        if (tag == null) {
+            candidates.addAll(tags.values());
+        } else if (tags.containsKey(tag)) {
+            candidates.add(tags.get(tag));
+        }
+        for (Set<MemberSearchCondition> keys : candidates) {
+            for (Iterator<MemberSearchCondition> it = keys.iterator(); it.hasNext(); ) {
+                MemberSearchCondition key = it.next();
+                if (affected.test(key)) {
+                    cache.invalidate(key);
+                    it.remove();
+                    tagged--;
+                }
+            }
+        }
+    }
+
+    //이 행이 검색조건의 회원명, 나이 범위에 걸리는지(팀은 태그로 이미 골라서 들어온다)
+    private static boolean covers(MemberSearchCondition key, MemberSnapshot row) {
+        if (key.getUsername() != null && !key.getUsername().equals(row.getUsername())) {
+            return false;
+        }
+        if (key.getUsernamePrefix() != null && (row.getUsername() == null || !row.getUsername().startsWith(key.getUsernamePrefix()))) {
+            return false;
+        }
+        if (key.getUsernameContains() != null && (row.getUsername() == null || !row.getUsername().contains(key.getUsernameContains()))) {
+            return false;
+        }
+        if (key.getAgeGoe() != null && row.getAge() < key.getAgeGoe()) {
+            return false;
+        }
+        return key.getAgeLoe() == null || row.getAge() <= key.getAgeLoe();
+    }
+
+    private void tag(MemberSearchCondition key) {
+        //크기 초과로 밀려난 엔트리의 태그는 여기서 한번에 정리한다
+        if (tagged >= maxSize * 2) {
+            for (Set<MemberSearchCondition> keys : tags.values()) {
+                keys.removeIf(k -> cache.getIfPresent(k) == null);
+            }
+            tagged = tags.values().stream().mapToInt(Set::size).sum();
+        }
+        String tag = key.getTeamName() != null ? key.getTeamName() : ANY_TEAM;
+        if (tags.computeIfAbsent(tag, t -> new HashSet<>()).add(key)) {
+            tagged++;
+        }
+    }
+
+    //플러시 시점에 지운 뒤 커밋 전까지 다른 트랜잭션이 예전 값을 다시 넣을 수 있으므로
+    //트랜잭션이 끝나면 같은 변경으로 한번 더 지운다
+    private void rememberForCompletion(Object change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Object> changes = (List<Object>) TransactionSynchronizationManager.getResource(WRITES_KEY);
+        if (changes == null) {
+            List<Object> pending = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(WRITES_KEY, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(WRITES_KEY);
+                    if (pending.contains(ALL)) {
+                        invalidate(ALL);
+                    } else {
+                        pending.forEach(MemberSearchCache.this::invalidate);
+                    }
+                }
+            });
+            changes = pending;
+        }
+        if (changes.contains(ALL)) {
+            return;
+        }
+        if (change == ALL || changes.size() >= MAX_PENDING_CHANGES) {
+            changes.clear();
+            changes.add(ALL);
+            return;
+        }
+        changes.add(change);
+    }
+
+    //setter 를 막은 MemberTeamDto. equals/hashCode/toString 과 JSON 은 MemberTeamDto 그대로다
+    private static final class FrozenMemberTeamDto extends MemberTeamDto {
+
+        private FrozenMemberTeamDto(MemberTeamDto row) {
+            super(row.getMemberId(), row.getUsername(), row.getAge(), row.getTeamId(), row.getTeamName());
+        }
+
+        @Override
+        public void setMemberId(Long memberId) {
+            throw frozen();
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw frozen();
+        }
+
+        @Override
+        public void setAge(int age) {
+            throw frozen();
+        }
+
+        @Override
+        public void setTeamId(Long teamId) {
+            throw frozen();
+        }
+
+        @Override
+        public void setTeamName(String teamName) {
+            throw frozen();
+        }
+
+        private static UnsupportedOperationException frozen() {
+            return new UnsupportedOperationException("캐시된 검색 결과는 바꿀 수 없습니다. 복사해서 쓰세요");
+        }
+    }
+}
@@ -0,0 +1,821 @@
+package com.study.querydsl.cache;
+
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.event.MemberChange;
+import com.study.querydsl.event.MemberChangeHandler;
+import com.study.querydsl.event.MemberSnapshot;
+import com.study.querydsl.event.TeamChange;
+import com.study.querydsl.repository.MemberJpaRepository;
+import lombok.Getter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.springframework.util.StringUtils.hasText;
+
+//MemberSearchCondition 을 DB 없이 메모리에서 푸는 보조 인덱스 (member.search.index.enabled=true 일때만 등록된다)
+//회원마다 행 번호(row)를 주고 행 번호 기준 원시 배열/비트맵으로 들고 있는다.
+//- username : 이름 -> 행 번호 int[], 이름의 글자 3개(trigram) -> 행 번호 목록 (앞부분/일부 검색용)
+//             글자 1~2개로 찾는 흔한 짧은 검색은 이름의 글자 1개/2개와 앞 1글자/2글자 -> ShortGramRows (행 목록 또는 BitSet)
+//- team : 팀 id -> 행 BitSet, 팀 이름 -> 팀 id 들
+//- age : 정렬된 나이 int[] 와 나이별 행 BitSet
+//조건별 비트맵을 AND 해서 건수(카드널리티)와 한 페이지의 회원 id 만 구하고 채우는 건 DB 에서 id in (...) 으로 한다.
+//
+//행 번호는 다시 쓰지 않는다. 처음 읽을때 id 순으로 넣고 새 회원 id 가 계속 커지는 동안은 비트 순서가 곧 id 순서라서 정렬이 필요없다.
+//
+//인덱스 내용은 Snapshot 하나에 있고 다시 읽기는 전용 스레드에서 새 Snapshot 을 만들어 다 되면 바꿔 끼운다.
+//- 처음이거나 비워진 뒤에는 다 읽을때까지 search 가 null 을 돌려줘서 DB 로 조회하게 한다 (요청 스레드가 기다리지 않는다)
+//- 지운 행이 살아있는 행보다 많아지면 지금 Snapshot 으로 계속 검색하면서 새로 읽는다
+//- 읽는 동안 커밋된 변경은 모아뒀다가 새 Snapshot 에 한번 더 반영한다 (변경 후 값으로 덮어쓰므로 두번 반영돼도 같다)
+//
+//동기화는 MemberChangeEventListener 로 받은 변경을 트랜잭션마다 모아뒀다가 커밋되면 반영한다.
+//벌크 연산(onBulkWrite)처럼 무엇이 바뀌었는지 모르면 비우고 다음 검색때 다시 읽는다.
+@Component
+@ConditionalOnProperty(name = "member.search.index.enabled", havingValue = "true")
+public class MemberSearchIndex implements MemberChangeHandler, DisposableBean {
+
+    private static final Object WRITES_KEY = MemberSearchIndex.class.getName() + ".WRITES";
+    private static final Object ALL = new Object();
+    private static final long NO_TEAM = -1;
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final int loadFetchSize;
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-search-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //아래 필드는 모두 lock 안에서만 읽고 쓴다
+    //검색에 쓰는 Snapshot (없으면 null)
+    private Snapshot current;
+    //다시 읽는 중인 작업과 그동안 커밋된 변경 (읽는 중이 아니면 null)
+    private Future<?> building;
+    private List<Object> missed;
+    //비울때마다 늘린다. 읽기 시작한 뒤에 비워졌으면 읽은 결과를 버린다
+    private long generation;
+
+    public MemberSearchIndex(MemberJpaRepository memberJpaRepository,
+                             @Value("${member.search.index.load-fetch-size:1000}") int loadFetchSize) {
+        this.memberJpaRepository = memberJpaRepository;
+        this.loadFetchSize = loadFetchSize;
+    }
+
+    //검색 결과 건수와 offset 부터 limit 건의 회원 id (id 오름차순)
+    //이 트랜잭션에서 회원/팀을 바꿨거나 아직 다 읽지 못했으면 null (DB 로 조회해야 한다)
+    public Result search(MemberSearchCondition condition, long offset, int limit) {
+        if (TransactionSynchronizationManager.hasResource(WRITES_KEY)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (current != null) {
+                return current.find(condition, offset, limit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        rebuild();
+        return null;
+    }
+
+    @Override
+    public void onMemberChange(MemberChange change) {
+        rememberForCompletion(change);
+    }
+
+    @Override
+    public void onTeamChange(TeamChange change) {
+        rememberForCompletion(change);
+    }
+
+    //어떤 행이 바뀌었는지 모르는 벌크 연산 - 지금 비우고 트랜잭션이 끝나면 한번 더 비운다
+    @Override
+    public void onBulkWrite(Class<?> entityType) {
+        invalidate();
+        rememberForCompletion(ALL);
+    }
+
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            current = null;
+            building = null;
+            missed = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //전용 스레드에서 DB 를 다시 읽기 시작한다 (이미 읽는 중이면 그 작업). 다 읽으면 지금 Snapshot 과 바꿔 끼운다
+    public Future<?> rebuild() {
+        lock.writeLock().lock();
+        try {
+            if (building == null) {
+                long buildGeneration = generation;
+                missed = new ArrayList<>();
+                building = rebuilder.submit(() -> build(buildGeneration));
+            }
+            return building;
+        } catch (RuntimeException e) {
+            //종료중이라 작업을 받지 않으면 DB 로 조회하게 둔다
+            missed = null;
+            return CompletableFuture.completedFuture(null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Usage usage() {
+        lock.readLock().lock();
+        try {
+            return current == null ? new Usage(false, 0, 0, 0)
+                    : new Usage(true, current.live.cardinality(), current.rows, current.estimateBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        rebuilder.shutdownNow();
+    }
+
+    //lock 없이 읽어서 새 Snapshot 을 만들고, 바꿔 끼울때만 lock 을 잡는다
+    private void build(long buildGeneration) {
+        Snapshot snapshot = new Snapshot();
+        RuntimeException failure = null;
+        try {
+            //조건 없는 검색 = 팀과 left join 한 전체 회원 (행 : memberId, username, age, teamId, teamName)
+            memberJpaRepository.streamSearchRows(new MemberSearchCondition(), loadFetchSize, snapshot::load);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        lock.writeLock().lock();
+        try {
+            if (generation != buildGeneration) {
+                return;
+            }
+            List<Object> changes = missed;
+            building = null;
+            missed = null;
+            //모은 변경을 반영할 수 없으면(벌크 연산 등) 버리고 다음 검색때 다시 읽는다
+            if (failure == null && snapshot.apply(changes)) {
+                current = snapshot;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void rememberForCompletion(Object change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            //스프링 트랜잭션 밖이면 언제 커밋될지 모르므로 비운다
+            invalidate();
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Object> changes = (List<Object>) TransactionSynchronizationManager.getResource(WRITES_KEY);
+        if (changes == null) {
+            List<Object> pending = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(WRITES_KEY, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(WRITES_KEY);
+                    if (status == STATUS_COMMITTED) {
+                        apply(pending);
+                    } else if (status == STATUS_UNKNOWN) {
+                        invalidate();
+                    }
+                }
+            });
+            changes = pending;
+        }
+        changes.add(change);
+    }
+
+    private void apply(List<Object> changes) {
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            if (missed != null) {
+                missed.addAll(changes);
+            }
+            if (current == null) {
+                return;
+            }
+            if (!current.apply(changes)) {
+                current = null;
+                return;
+            }
+            compact = current.needsCompaction();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compact) {
+            rebuild();
+        }
+    }
+
+    //이름 하나에 같은 trigram 이 여러번 나와도 행은 한번만 넣는다
+    private static Set<Long> trigrams(String username) {
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= username.length(); i++) {
+            trigrams.add(trigram(username, i));
+        }
+        return trigrams;
+    }
+
+    //글자 3개(char 16비트씩)를 long 하나로
+    private static long trigram(String text, int from) {
+        return ((long) text.charAt(from) << 32) | ((long) text.charAt(from + 1) << 16) | text.charAt(from + 2);
+    }
+
+    //이름에 들어있는 글자 1개, 2개와 이름의 앞 1글자, 2글자
+    private static Set<Long> shortGrams(String username) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i < username.length(); i++) {
+            grams.add(shortGram(username, i, 1, false));
+            if (i + 2 <= username.length()) {
+                grams.add(shortGram(username, i, 2, false));
+            }
+        }
+        for (int length = 1; length <= Math.min(2, username.length()); length++) {
+            grams.add(shortGram(username, 0, length, true));
+        }
+        return grams;
+    }
+
+    //앞부분 여부(1비트) + 글자 수(2비트) + 글자 2개(char 16비트씩)
+    private static long shortGram(String text, int from, int length, boolean prefix) {
+        long gram = (prefix ? 1L << 34 : 0) | (long) length << 32 | (long) text.charAt(from) << 16;
+        return length == 2 ? gram | text.charAt(from + 1) : gram;
+    }
+
+    //인덱스 내용. 만드는 동안은 만드는 스레드만, 바꿔 끼운 뒤에는 lock 안에서만 읽고 쓴다
+    private static final class Snapshot {
+        private int rows;
+        private long[] memberIds = new long[1024];
+        private String[] usernames = new String[1024];
+        private int[] ages = new int[1024];
+        private long[] teamIds = new long[1024];
+        private final BitSet live = new BitSet();
+        private final RowIds rowIds = new RowIds();
+        private boolean idOrdered = true;
+        private final Map<String, int[]> usernameRows = new HashMap<>();
+        private final Map<Long, IntList> trigramRows = new HashMap<>();
+        private final Map<Long, ShortGramRows> shortGramRows = new HashMap<>();
+        //trigram, 짧은 글자 행 목록에 넣은 항목 수와 그 중 지운 행으로 남아있는 항목 수
+        private long trigramEntries;
+        private long staleTrigramEntries;
+        private final Map<Long, BitSet> teamRows = new HashMap<>();
+        private final Map<Long, String> teamNames = new HashMap<>();
+        private final Map<String, Set<Long>> teamIdsByName = new HashMap<>();
+        private int ageCount;
+        private int[] ageValues = new int[16];
+        private BitSet[] ageRows = new BitSet[16];
+
+        private void load(Object[] row) {
+            Long teamId = (Long) row[3];
+            if (teamId != null) {
+                putTeam(teamId, (String) row[4]);
+            }
+            insert((Long) row[0], (String) row[1], (Integer) row[2], teamId);
+        }
+
+        //반영할 수 없는 변경(벌크 연산, 이름을 모르는 팀)이 있으면 false
+        private boolean apply(List<Object> changes) {
+            for (Object change : changes) {
+                if (change == ALL || !apply(change)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        //지운 행(또는 남겨둔 trigram 항목)이 살아있는 것보다 많으면 다시 읽어서 줄인다
+        private boolean needsCompaction() {
+            return rows > 1024 && rows - live.cardinality() > live.cardinality()
+                    || trigramEntries > 1024 && staleTrigramEntries * 2 > trigramEntries;
+        }
+
+        private Result find(MemberSearchCondition condition, long offset, int limit) {
+            BitSet matched = match(condition);
+            int total = matched.cardinality();
+            List<Long> ids = new ArrayList<>((int) Math.max(0, Math.min(limit, total - offset)));
+            if (offset >= total) {
+                return new Result(total, ids);
+            }
+            if (idOrdered) {
+                int row = matched.nextSetBit(0);
+                for (long skip = 0; skip < offset; skip++) {
+                    row = matched.nextSetBit(row + 1);
+                }
+                for (; row >= 0 && ids.size() < limit; row = matched.nextSetBit(row + 1)) {
+                    ids.add(memberIds[row]);
+                }
+            } else {
+                long[] matchedIds = new long[total];
+                int i = 0;
+                for (int row = matched.nextSetBit(0); row >= 0; row = matched.nextSetBit(row + 1)) {
+                    matchedIds[i++] = memberIds[row];
+                }
+                Arrays.sort(matchedIds);
+                for (long j = offset; j < total && ids.size() < limit; j++) {
+                    ids.add(matchedIds[(int) j]);
+                }
+            }
+            return new Result(total, ids);
+        }
+
+        //가장 좁은 조건부터 시작해서 나머지 조건의 비트맵과 AND 한다
+        private BitSet match(MemberSearchCondition condition) {
+            BitSet matched;
+            if (hasText(condition.getUsername())) {
+                //이름은 보통 몇 건 안되므로 행을 하나씩 비트로 옮긴다
+                matched = new BitSet();
+                int[] postings = usernameRows.get(condition.getUsername());
+                if (postings != null) {
+                    for (int row : postings) {
+                        matched.set(row);
+                    }
+                }
+            } else {
+                matched = (BitSet) live.clone();
+            }
+            if (hasText(condition.getUsernamePrefix())) {
+                matched.and(usernameMatches(condition.getUsernamePrefix(), true));
+            }
+            if (hasText(condition.getUsernameContains())) {
+                matched.and(usernameMatches(condition.getUsernameContains(), false));
+            }
+            if (hasText(condition.getTeamName())) {
+                BitSet teams = new BitSet();
+                for (Long teamId : teamIdsByName.getOrDefault(condition.getTeamName(), new HashSet<>())) {
+                    BitSet members = teamRows.get(teamId);
+                    if (members != null) {
+                        teams.or(members);
+                    }
+                }
+                matched.and(teams);
+            }
+            if (condition.getAgeGoe() != null || condition.getAgeLoe() != null) {
+                int from = condition.getAgeGoe() != null ? lowerBound(condition.getAgeGoe()) : 0;
+                int to = condition.getAgeLoe() != null ? lowerBound(condition.getAgeLoe() + 1L) : ageCount;
+                BitSet inRange = new BitSet();
+                for (int i = from; i < to; i++) {
+                    inRange.or(ageRows[i]);
+                }
+                matched.and(inRange);
+            }
+            return matched;
+        }
+
+        //찾는 글자의 trigram 중 행이 가장 적은 것의 행만 후보로 두고 실제 이름과 비교한다
+        //두 글자 이하면 그 글자(앞부분이면 앞 글자)의 행을 그대로 쓴다
+        private BitSet usernameMatches(String text, boolean prefix) {
+            if (text.length() < 3) {
+                ShortGramRows gramRows = shortGramRows.get(shortGram(text, 0, text.length(), prefix));
+                return gramRows == null ? new BitSet() : gramRows.rows(usernames, text, prefix);
+            }
+            BitSet matched = new BitSet();
+            IntList candidates = null;
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                IntList rowsWithTrigram = trigramRows.get(trigram(text, i));
+                if (rowsWithTrigram == null) {
+                    return matched;
+                }
+                if (candidates == null || rowsWithTrigram.size < candidates.size) {
+                    candidates = rowsWithTrigram;
+                }
+            }
+            for (int i = 0; i < candidates.size; i++) {
+                int row = candidates.values[i];
+                String username = usernames[row];
+                if (username != null && (prefix ? username.startsWith(text) : username.contains(text))) {
+                    matched.set(row);
+                }
+            }
+            return matched;
+        }
+
+        //age 이상인 첫 나이의 위치
+        private int lowerBound(long age) {
+            if (age > Integer.MAX_VALUE) {
+                return ageCount;
+            }
+            int i = Arrays.binarySearch(ageValues, 0, ageCount, (int) Math.max(Integer.MIN_VALUE, age));
+            return i >= 0 ? i : -i - 1;
+        }
+
+        //반영할 수 없으면(이름을 모르는 팀) false
+        private boolean apply(Object change) {
+            if (change instanceof TeamChange) {
+                TeamChange teamChange = (TeamChange) change;
+                if (teamChange.getType() == MemberChange.Type.DELETE) {
+                    removeTeam(teamChange.getTeamId());
+                    return true;
+                }
+                if (teamChange.getNewName() == null) {
+                    return false;
+                }
+                putTeam(teamChange.getTeamId(), teamChange.getNewName());
+                return true;
+            }
+            MemberChange memberChange = (MemberChange) change;
+            MemberSnapshot after = memberChange.getAfter();
+            if (after == null) {
+                remove(memberChange.getMemberId());
+                return true;
+            }
+            if (after.getTeamId() != null) {
+                if (after.isTeamNameKnown()) {
+                    putTeam(after.getTeamId(), after.getTeamName());
+                } else if (!teamNames.containsKey(after.getTeamId())) {
+                    return false;
+                }
+            }
+            int row = rowIds.get(memberChange.getMemberId());
+            if (row < 0) {
+                insert(memberChange.getMemberId(), after.getUsername(), after.getAge(), after.getTeamId());
+            } else {
+                //이름이 그대로면 trigram 은 건드리지 않는다
+                boolean renamed = !Objects.equals(usernames[row], after.getUsername());
+                unindex(row, renamed);
+                index(row, after.getUsername(), after.getAge(), after.getTeamId(), renamed);
+            }
+            return true;
+        }
+
+        private void insert(long memberId, String username, int age, Long teamId) {
+            if (rows == memberIds.length) {
+                int capacity = memberIds.length * 2;
+                memberIds = Arrays.copyOf(memberIds, capacity);
+                usernames = Arrays.copyOf(usernames, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+                teamIds = Arrays.copyOf(teamIds, capacity);
+            }
+            int row = rows++;
+            if (row > 0 && memberIds[row - 1] >= memberId) {
+                idOrdered = false;
+            }
+            memberIds[row] = memberId;
+            rowIds.put(memberId, row);
+            live.set(row);
+            index(row, username, age, teamId, true);
+        }
+
+        private void remove(long memberId) {
+            int row = rowIds.get(memberId);
+            if (row < 0) {
+                return;
+            }
+            unindex(row, true);
+            live.clear(row);
+            rowIds.remove(memberId);
+        }
+
+        private void index(int row, String username, int age, Long teamId, boolean trigrams) {
+            usernames[row] = username;
+            ages[row] = age;
+            teamIds[row] = teamId != null ? teamId : NO_TEAM;
+            if (username != null) {
+                int[] postings = usernameRows.get(username);
+                if (postings == null) {
+                    usernameRows.put(username, new int[]{row});
+                } else {
+                    int[] added = Arrays.copyOf(postings, postings.length + 1);
+                    added[postings.length] = row;
+                    usernameRows.put(username, added);
+                }
+                if (trigrams) {
+                    for (long trigram : trigrams(username)) {
+                        trigramRows.computeIfAbsent(trigram, t -> new IntList()).add(row);
+                        trigramEntries++;
+                    }
+                    for (long gram : shortGrams(username)) {
+                        if (shortGramRows.computeIfAbsent(gram, g -> new ShortGramRows()).add(row, rows, usernames, gram)) {
+                            trigramEntries++;
+                        }
+                    }
+                }
+            }
+            if (teamId != null) {
+                teamRows.computeIfAbsent(teamId, id -> new BitSet()).set(row);
+            }
+            int i = Arrays.binarySearch(ageValues, 0, ageCount, age);
+            if (i < 0) {
+                i = -i - 1;
+                if (ageCount == ageValues.length) {
+                    ageValues = Arrays.copyOf(ageValues, ageCount * 2);
+                    ageRows = Arrays.copyOf(ageRows, ageCount * 2);
+                }
+                System.arraycopy(ageValues, i, ageValues, i + 1, ageCount - i);
+                System.arraycopy(ageRows, i, ageRows, i + 1, ageCount - i);
+                ageValues[i] = age;
+                ageRows[i] = new BitSet();
+                ageCount++;
+            }
+            ageRows[i].set(row);
+        }
+
+        private void unindex(int row, boolean trigrams) {
+            String username = usernames[row];
+            if (username != null) {
+                int[] postings = usernameRows.get(username);
+                int[] removed = new int[postings.length - 1];
+                int j = 0;
+                for (int posting : postings) {
+                    if (posting != row) {
+                        removed[j++] = posting;
+                    }
+                }
+                if (removed.length == 0) {
+                    usernameRows.remove(username);
+                } else {
+                    usernameRows.put(username, removed);
+                }
+                //흔한 trigram 은 행이 수백만개라 목록에서 찾아 지우지 않고 남겨둔다 (검색할때 실제 이름과 비교하므로 걸러진다)
+                if (trigrams) {
+                    staleTrigramEntries += trigrams(username).size();
+                    for (long gram : shortGrams(username)) {
+                        if (!shortGramRows.get(gram).remove(row)) {
+                            staleTrigramEntries++;
+                        }
+                    }
+                }
+            }
+            if (teamIds[row] != NO_TEAM) {
+                BitSet members = teamRows.get(teamIds[row]);
+                if (members != null) {
+                    members.clear(row);
+                }
+            }
+            ageRows[Arrays.binarySearch(ageValues, 0, ageCount, ages[row])].clear(row);
+            usernames[row] = null;
+        }
+
+        private void putTeam(Long teamId, String name) {
+            String oldName = teamNames.put(teamId, name);
+            if (oldName != null && !oldName.equals(name)) {
+                Set<Long> ids = teamIdsByName.get(oldName);
+                ids.remove(teamId);
+                if (ids.isEmpty()) {
+                    teamIdsByName.remove(oldName);
+                }
+            }
+            teamIdsByName.computeIfAbsent(name, n -> new HashSet<>()).add(teamId);
+        }
+
+        private void removeTeam(Long teamId) {
+            String name = teamNames.remove(teamId);
+            if (name != null) {
+                Set<Long> ids = teamIdsByName.get(name);
+                ids.remove(teamId);
+                if (ids.isEmpty()) {
+                    teamIdsByName.remove(name);
+                }
+            }
+            teamRows.remove(teamId);
+        }
+
+        //64비트 JVM(compressed oops) 기준 대략적인 크기. 객체 헤더 12~16, 배열 헤더 16, 참조 4 바이트로 센다
+        private long estimateBytes() {
+            long bytes = (long) memberIds.length * (8 + 4 + 4 + 8);
+            bytes += bitSetBytes(live);
+            bytes += (long) rowIds.keys.length * (8 + 4);
+            //HashMap 노드 32 + 테이블 칸 4 + String 24 + byte[] 16 + 길이 (Latin1) + int[] 16 + 4 * 건수
+            for (Map.Entry<String, int[]> entry : usernameRows.entrySet()) {
+                bytes += 32 + 4 + 24 + 16 + entry.getKey().length() + 16 + 4L * entry.getValue().length;
+            }
+            //HashMap 노드 32 + 테이블 칸 4 + Long 16 + IntList 24 + int[] 16 + 4 * 용량
+            for (IntList rowsWithTrigram : trigramRows.values()) {
+                bytes += 32 + 4 + 16 + 24 + 16 + 4L * rowsWithTrigram.values.length;
+            }
+            for (ShortGramRows gramRows : shortGramRows.values()) {
+                bytes += 32 + 4 + 16 + 16 + (gramRows.bits != null
+                        ? bitSetBytes(gramRows.bits)
+                        : 24 + 16 + 4L * gramRows.list.values.length);
+            }
+            for (BitSet members : teamRows.values()) {
+                bytes += 32 + 4 + 16 + bitSetBytes(members);
+            }
+            bytes += teamNames.size() * (32 + 4 + 16 + 24 + 16 + 16L);
+            bytes += 16 + 4L * ageValues.length + 16 + 4L * ageRows.length;
+            for (int i = 0; i < ageCount; i++) {
+                bytes += bitSetBytes(ageRows[i]);
+            }
+            return bytes;
+        }
+
+        private static long bitSetBytes(BitSet bits) {
+            return 24 + 16 + bits.size() / 8;
+        }
+    }
+
+    @Getter
+    public static class Result {
+        private final long total;
+        private final List<Long> memberIds;
+
+        public Result(long total, List<Long> memberIds) {
+            this.total = total;
+            this.memberIds = memberIds;
+        }
+    }
+
+    @Getter
+    public static class Usage {
+        private final boolean loaded;
+        private final int members;
+        private final int rows;
+        private final long estimatedBytes;
+        //백만명일때 예상 크기 (지금 크기를 회원 수 비율로 늘린 값)
+        private final long bytesPerMillionMembers;
+
+        public Usage(boolean loaded, int members, int rows, long estimatedBytes) {
+            this.loaded = loaded;
+            this.members = members;
+            this.rows = rows;
+            this.estimatedBytes = estimatedBytes;
+            this.bytesPerMillionMembers = members == 0 ? 0 : estimatedBytes * 1_000_000L / members;
+        }
+    }
+
+    //trigram 별 행 번호 목록 (순서 없음, 지운 행이 남아있을 수 있다)
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    //글자 1~2개 별 행
+    //행이 적으면 행 번호 목록(지운 행이 남아있을 수 있어서 읽을때 이름과 비교한다)으로 두고,
+    //전체 행의 1/32 을 넘으면 목록보다 작은 BitSet 으로 바꾼다. BitSet 은 지울때 바로 비트를 지우므로 그대로 복사해서 쓴다
+    private static final class ShortGramRows {
+        private static final int MIN_BITSET_ROWS = 64;
+
+        private IntList list = new IntList();
+        private BitSet bits;
+
+        //목록에 넣었으면 true (BitSet 으로 바꿀때는 살아있는 행만 옮긴다)
+        boolean add(int row, int rows, String[] usernames, long gram) {
+            if (bits != null) {
+                bits.set(row);
+                return false;
+            }
+            list.add(row);
+            if (list.size >= MIN_BITSET_ROWS && (long) list.size * 32 > rows) {
+                bits = new BitSet();
+                String text = text(gram);
+                boolean prefix = (gram & 1L << 34) != 0;
+                for (int i = 0; i < list.size; i++) {
+                    int posting = list.values[i];
+                    if (matches(usernames[posting], text, prefix)) {
+                        bits.set(posting);
+                    }
+                }
+                list = null;
+            }
+            return true;
+        }
+
+        //BitSet 이면 지우고 true, 목록이면 남겨두고 false
+        boolean remove(int row) {
+            if (bits == null) {
+                return false;
+            }
+            bits.clear(row);
+            return true;
+        }
+
+        BitSet rows(String[] usernames, String text, boolean prefix) {
+            if (bits != null) {
+                return (BitSet) bits.clone();
+            }
+            BitSet matched = new BitSet();
+            for (int i = 0; i < list.size; i++) {
+                int row = list.values[i];
+                if (matches(usernames[row], text, prefix)) {
+                    matched.set(row);
+                }
+            }
+            return matched;
+        }
+
+        private static boolean matches(String username, String text, boolean prefix) {
+            return username != null && (prefix ? username.startsWith(text) : username.contains(text));
+        }
+
+        private static String text(long gram) {
+            char first = (char) (gram >>> 16);
+            return (gram >>> 32 & 3) == 2 ? new String(new char[]{first, (char) gram}) : String.valueOf(first);
+        }
+    }
+
+    //회원 id -> 행 번호 (Long/Integer 박싱 없는 선형 탐사 해시). 회원 id 는 시퀀스라 0 이 없으므로 0 을 빈칸으로 쓴다
+    private static final class RowIds {
+        private long[] keys = new long[2048];
+        private int[] values = new int[2048];
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            for (; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        //지운 칸 뒤에 같은 탐사열로 밀려난 키들을 당겨온다(삭제 표시를 남기지 않는다)
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = 0;
+            size--;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!between) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    keys[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.study.querydsl.cache;
+
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.event.MemberChange;
+import com.study.querydsl.event.MemberChangeHandler;
+import com.study.querydsl.repository.MemberStatistics;
+import com.study.querydsl.repository.MemberStatisticsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+//추정 카운트(searchPageEstimated)에 쓰는 MemberStatistics 를 들고 있다가 오래되면 다시 모은다
+//- 모은 뒤 maxAge 가 지났거나
+//- 그 뒤로 바뀐 회원 수가 전체의 staleRatio 를 넘으면 (벌크 연산은 이벤트가 없으므로 maxAge 로만 따라간다)
+//다시 모으는 집계 쿼리 3개는 전용 스레드에서 돌리고 요청 스레드는 다 모을때까지 이전 통계를 쓴다 (요청의 SQL 수에 들어가지 않는다)
+//처음 통계는 애플리케이션이 뜰때 모으기 시작하고, 그 전에 온 요청만 처음 통계가 모일때까지 기다린다.
+@Slf4j
+@Component
+public class MemberStatisticsCache implements MemberChangeHandler, DisposableBean {
+
+    private final MemberStatisticsRepository memberStatisticsRepository;
+    private final int ageBuckets;
+    private final long maxAgeNanos;
+    private final double staleRatio;
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-statistics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong modifications = new AtomicLong();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    //다시 모으는 중인 작업 (없으면 null)
+    private final AtomicReference<Future<?>> refreshing = new AtomicReference<>();
+    private volatile MemberStatistics statistics;
+    private volatile long collectedAt;
+    //모은 횟수. 맡긴 뒤에 다른 곳에서 이미 다시 모았는지 본다
+    private volatile long collections;
+
+    public MemberStatisticsCache(MemberStatisticsRepository memberStatisticsRepository,
+                                 @Value("${member.statistics.age-buckets:32}") int ageBuckets,
+                                 @Value("${member.statistics.max-age:5m}") Duration maxAge,
+                                 @Value("${member.statistics.stale-ratio:0.1}") double staleRatio) {
+        this.memberStatisticsRepository = memberStatisticsRepository;
+        this.ageBuckets = ageBuckets;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.staleRatio = staleRatio;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refreshAsync();
+    }
+
+    public long estimate(MemberSearchCondition condition) {
+        return current().estimate(condition);
+    }
+
+    public MemberStatistics current() {
+        MemberStatistics current = statistics;
+        if (current == null) {
+            return awaitFirst();
+        }
+        if (isStale(current)) {
+            refreshAsync();
+        }
+        return current;
+    }
+
+    //요청 스레드에서 바로 다시 모은다 (테스트처럼 지금 트랜잭션의 데이터로 모아야 할때)
+    public MemberStatistics refresh() {
+        refreshLock.lock();
+        try {
+            long modificationsBefore = modifications.get();
+            MemberStatistics collected = memberStatisticsRepository.collect(ageBuckets);
+            modifications.addAndGet(-modificationsBefore);
+            collectedAt = System.nanoTime();
+            statistics = collected;
+            collections++;
+            return collected;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    //전용 스레드에서 다시 모으기 시작한다 (이미 모으는 중이면 그 작업)
+    public Future<?> refreshAsync() {
+        Future<?> running = refreshing.get();
+        if (running != null) {
+            return running;
+        }
+        CompletableFuture<Void> task = new CompletableFuture<>();
+        if (!refreshing.compareAndSet(null, task)) {
+            running = refreshing.get();
+            return running != null ? running : CompletableFuture.completedFuture(null);
+        }
+        long requestedAfter = collections;
+        try {
+            refresher.execute(() -> {
+                try {
+                    refreshIfNotCollectedSince(requestedAfter);
+                    task.complete(null);
+                } catch (RuntimeException e) {
+                    log.warn("회원 통계를 다시 모으지 못했습니다. 이전 통계를 계속 씁니다", e);
+                    task.completeExceptionally(e);
+                } finally {
+                    refreshing.compareAndSet(task, null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //종료중이면 이전 통계를 계속 쓴다
+            refreshing.compareAndSet(task, null);
+            task.completeExceptionally(e);
+        }
+        return task;
+    }
+
+    @Override
+    public void onMemberChange(MemberChange change) {
+        modifications.incrementAndGet();
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    //맡긴 뒤에 다른 곳에서 이미 다시 모았으면 그 통계를 그대로 쓴다
+    private void refreshIfNotCollectedSince(long requestedAfter) {
+        refreshLock.lock();
+        try {
+            if (statistics == null || collections == requestedAfter) {
+                refresh();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    //뜨자마자 온 요청만 기다린다. 모으다 실패했으면 요청 스레드에서 직접 모은다
+    private MemberStatistics awaitFirst() {
+        try {
+            refreshAsync().get();
+        } catch (ExecutionException e) {
+            return refresh();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        MemberStatistics current = statistics;
+        return current != null ? current : refresh();
+    }
+
+    private boolean isStale(MemberStatistics current) {
+        return System.nanoTime() - collectedAt > maxAgeNanos
+                || modifications.get() > Math.max(1, current.getTotal()) * staleRatio;
+    }
+}
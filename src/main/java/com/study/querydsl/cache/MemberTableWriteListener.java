@@ -0,0 +1,55 @@
+package com.study.querydsl.cache;
+
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+//p6spy 리스너로 member, team 테이블에 대한 쓰기를 감지해서 카운트 캐시를 비운다.
+//em.persist 뿐 아니라 querydsl execute() 벌크 연산도 결국 SQL로 나가기 때문에 모두 잡힌다.
+//쓰기가 있던 트랜잭션에서는 커밋되지 않은 값이 캐시에 들어갈 수 있으므로 커밋/롤백 시점에 한번 더 비운다.
+//벌크 연산인지는 SQL 모양으로 알 수 없으므로 여기서 가리지 않는다 (BulkWriteQueryTranslatorFactory 가 JPQL 실행 경로에서 알려준다).
+@Component
+@RequiredArgsConstructor
+public class MemberTableWriteListener extends SimpleJdbcEventListener {
+
+    private static final Pattern MEMBER_TABLE_WRITE =
+            Pattern.compile("^\\s*(insert\\s+into|update|delete\\s+from)\\s+(member|team)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final ThreadLocal<Boolean> dirty = ThreadLocal.withInitial(() -> false);
+
+    private final MemberCountCache memberCountCache;
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        if (isMemberTableWrite(statementInformation.getSql())) {
+            dirty.set(true);
+            memberCountCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void onAfterCommit(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        endTransaction();
+    }
+
+    @Override
+    public void onAfterRollback(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        endTransaction();
+    }
+
+    private void endTransaction() {
+        if (dirty.get()) {
+            dirty.remove();
+            memberCountCache.invalidateAll();
+        }
+    }
+
+    static boolean isMemberTableWrite(String sql) {
+        return sql != null && MEMBER_TABLE_WRITE.matcher(sql).find();
+    }
+}
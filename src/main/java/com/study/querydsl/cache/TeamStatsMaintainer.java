@@ -0,0 +1,183 @@
+package com.study.querydsl.cache;
+
+import com.study.querydsl.event.MemberChange;
+import com.study.querydsl.event.MemberChangeHandler;
+import com.study.querydsl.event.MemberSnapshot;
+import com.study.querydsl.event.TeamChange;
+import com.study.querydsl.repository.TeamStatsRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+//TeamStats 를 회원 변경분으로 갱신한다
+//플러시 때 받은 변경을 팀별 증감으로 모아두었다가 커밋 직전에 팀마다 update 한번으로 반영한다.
+//- 추가만 있으면 최소/최대는 기존 값과 비교만 한다
+//- 빠진 회원이 있으면 최소/최대를 (team_id, age) 인덱스로 다시 구한다
+//- 변경 전 값을 모르는 update, 벌크 연산(onBulkWrite)은 전체를 다시 집계한다
+//- 행이 없는 팀은 팀 행을 잠근 뒤 한번 더 update 해보고 그래도 없으면 새로 집계한다
+@Component
+@RequiredArgsConstructor
+public class TeamStatsMaintainer implements MemberChangeHandler {
+
+    private final TeamStatsRepository teamStatsRepository;
+
+    private final ThreadLocal<Pending> pending = ThreadLocal.withInitial(Pending::new);
+
+    @Override
+    public void onMemberChange(MemberChange change) {
+        Pending changes = pending.get();
+        if (change.isBeforeUnknown()) {
+            changes.rebuild = true;
+            return;
+        }
+        MemberSnapshot before = change.getBefore();
+        MemberSnapshot after = change.getAfter();
+        if (before != null && after != null
+                && before.getAge() == after.getAge() && Objects.equals(before.getTeamId(), after.getTeamId())) {
+            return;
+        }
+        if (before != null && before.getTeamId() != null) {
+            changes.delta(before.getTeamId()).remove(before.getAge());
+        }
+        if (after != null && after.getTeamId() != null) {
+            changes.delta(after.getTeamId()).add(after.getAge());
+        }
+    }
+
+    @Override
+    public void onTeamChange(TeamChange change) {
+        Pending changes = pending.get();
+        if (change.getType() == MemberChange.Type.INSERT) {
+            changes.created.add(change.getTeamId());
+        } else if (change.getType() == MemberChange.Type.DELETE) {
+            changes.created.remove(change.getTeamId());
+            changes.deltas.remove(change.getTeamId());
+            changes.deleted.add(change.getTeamId());
+        }
+    }
+
+    @Override
+    public void beforeTransactionCompletion() {
+        apply();
+    }
+
+    @Override
+    public void afterTransactionCompletion(boolean success) {
+        pending.remove();
+    }
+
+    //벌크 연산은 엔티티 이벤트가 없으므로 스프링 트랜잭션 커밋 직전에 전체를 다시 집계한다
+    @Override
+    public void onBulkWrite(Class<?> entityType) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Pending changes = pending.get();
+        if (changes.bulk) {
+            return;
+        }
+        changes.bulk = true;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                //남은 엔티티 변경을 먼저 내보내서 다시 집계할때 포함되게 한다
+                teamStatsRepository.flush();
+                pending.get().rebuild = true;
+                apply();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                pending.remove();
+            }
+        });
+    }
+
+    private void apply() {
+        Pending changes = pending.get();
+        try {
+            if (changes.rebuild) {
+                teamStatsRepository.rebuild();
+                return;
+            }
+            for (Long teamId : changes.deleted) {
+                teamStatsRepository.delete(teamId);
+            }
+            for (Long teamId : changes.created) {
+                teamStatsRepository.refresh(teamId);
+            }
+            for (Map.Entry<Long, Delta> entry : changes.deltas.entrySet()) {
+                Long teamId = entry.getKey();
+                Delta delta = entry.getValue();
+                if (changes.created.contains(teamId) || delta.isEmpty()) {
+                    continue;
+                }
+                //이 기능 이전부터 있던 팀처럼 행이 없으면 새로 집계한다
+                //같은 팀 행을 두 트랜잭션이 동시에 만들면 한쪽이 PK 위반으로 커밋에 실패하므로
+                //팀 행을 잠가서 만드는 쪽을 한 트랜잭션으로 줄이고, 기다린 쪽은 그 사이 만들어진 행에 증감만 다시 반영한다
+                if (update(teamId, delta) == 0) {
+                    teamStatsRepository.lockTeam(teamId);
+                    if (update(teamId, delta) == 0) {
+                        teamStatsRepository.refresh(teamId);
+                    }
+                }
+            }
+        } finally {
+            //커밋 플러시 뒤에 다시 변경이 오면 그것만 반영하도록 비운다 (bulk 표시는 유지)
+            boolean bulk = changes.bulk;
+            pending.remove();
+            pending.get().bulk = bulk;
+        }
+    }
+
+    private int update(Long teamId, Delta delta) {
+        return delta.removed
+                ? teamStatsRepository.remove(teamId, delta.count, delta.ageSum)
+                : teamStatsRepository.add(teamId, delta.count, delta.ageSum, delta.addedMin, delta.addedMax);
+    }
+
+    private static class Pending {
+        //팀 행을 잠글때 교착되지 않도록 팀 id 순서로 반영한다
+        private final Map<Long, Delta> deltas = new TreeMap<>();
+        private final Set<Long> created = new HashSet<>();
+        private final Set<Long> deleted = new HashSet<>();
+        private boolean rebuild;
+        private boolean bulk;
+
+        private Delta delta(Long teamId) {
+            return deltas.computeIfAbsent(teamId, id -> new Delta());
+        }
+    }
+
+    private static class Delta {
+        private long count;
+        private long ageSum;
+        private int addedMin = Integer.MAX_VALUE;
+        private int addedMax = Integer.MIN_VALUE;
+        private boolean removed;
+
+        private void add(int age) {
+            count++;
+            ageSum += age;
+            addedMin = Math.min(addedMin, age);
+            addedMax = Math.max(addedMax, age);
+        }
+
+        private void remove(int age) {
+            count--;
+            ageSum -= age;
+            removed = true;
+        }
+
+        private boolean isEmpty() {
+            return count == 0 && ageSum == 0 && !removed && addedMin == Integer.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.study.querydsl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+
+//페이징 카운트 쿼리를 컨텐츠 쿼리와 동시에 돌리기 위한 전용 스레드풀
+//member.search.parallel-count=true 일때만 등록된다.
+//작업마다 읽기 전용 트랜잭션을 새로 열기 때문에 호출한 쪽과 다른 커넥션, 다른 EntityManager 를 쓴다.
+//풀과 큐가 모두 차면 호출한 스레드에서 바로 실행하므로 순차 실행과 같아질 뿐 요청이 실패하지는 않는다.
+//
+//커넥션 크기 규칙
+//병렬 카운트는 요청 스레드가 커넥션 하나를 잡은 채로 커넥션이 하나 더 필요한 카운트 스레드를 기다린다.
+//커넥션 풀이 요청 스레드로 다 차면 카운트 스레드가 커넥션을 못 얻어서 서로 기다리게 되므로(connection-timeout 까지)
+//커넥션 풀에 남은 커넥션(최대 - 사용중)이 2 x count-pool-size 이상일때만 병렬로 돌리고 아니면 순차로 센다.
+//(카운트 스레드 count-pool-size 개 + 그 스레드를 기다리는 요청 스레드 count-pool-size 개)
+//따라서 커넥션 풀 최대 크기(maximum-pool-size) 는 2 x count-pool-size 보다 커야 병렬 경로를 쓸 수 있다.
+//복제본 라우팅을 쓰면 원본/복제본 풀 모두 이 규칙을 만족해야 한다.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "member.search.parallel-count", havingValue = "true")
+public class CountQueryExecutor implements DisposableBean {
+
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final TransactionTemplate readOnlyTransaction;
+    private final List<HikariDataSource> connectionPools;
+    private final int requiredSpareConnections;
+
+    public CountQueryExecutor(PlatformTransactionManager transactionManager, DataSource dataSource,
+                              @Value("${member.search.count-pool-size:4}") int poolSize,
+                              @Value("${member.search.count-queue-capacity:100}") int queueCapacity) throws SQLException {
+        executor.setThreadNamePrefix("count-query-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        connectionPools = connectionPools(dataSource);
+        requiredSpareConnections = 2 * poolSize;
+        for (HikariDataSource pool : connectionPools) {
+            if (pool.getMaximumPoolSize() < requiredSpareConnections) {
+                log.warn("커넥션 풀 {} 의 최대 크기 {} 가 2 x count-pool-size({}) 보다 작아서 카운트 쿼리는 항상 순차로 실행됩니다",
+                        pool.getPoolName(), pool.getMaximumPoolSize(), requiredSpareConnections);
+            }
+        }
+    }
+
+    public <T> Future<T> submit(Supplier<T> query) {
+        return executor.submit(() -> readOnlyTransaction.execute(status -> query.get()));
+    }
+
+    //모든 커넥션 풀에 2 x count-pool-size 개 이상 남아있고 커넥션을 기다리는 스레드가 없으면 true
+    //히카리 풀이 아니면 남은 커넥션을 알 수 없으므로 false (순차 실행)
+    public boolean hasSpareConnections() {
+        if (connectionPools.isEmpty()) {
+            return false;
+        }
+        for (HikariDataSource pool : connectionPools) {
+            HikariPoolMXBean mxBean = pool.getHikariPoolMXBean();
+            int active = mxBean != null ? mxBean.getActiveConnections() : 0;
+            int waiting = mxBean != null ? mxBean.getThreadsAwaitingConnection() : 0;
+            if (waiting > 0 || pool.getMaximumPoolSize() - active < requiredSpareConnections) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //p6spy 로 감싸져 있으므로 unwrap 으로 꺼낸다. 라우팅 DataSource 면 원본과 복제본
+    private static List<HikariDataSource> connectionPools(DataSource dataSource) throws SQLException {
+        List<HikariDataSource> pools = new ArrayList<>();
+        if (dataSource.isWrapperFor(ReplicaRoutingDataSource.class)) {
+            ReplicaRoutingDataSource routing = dataSource.unwrap(ReplicaRoutingDataSource.class);
+            addIfHikari(pools, routing.getPrimary());
+            addIfHikari(pools, routing.getReplica());
+        } else {
+            addIfHikari(pools, dataSource);
+        }
+        return pools;
+    }
+
+    private static void addIfHikari(List<HikariDataSource> pools, DataSource dataSource) throws SQLException {
+        if (dataSource.isWrapperFor(HikariDataSource.class)) {
+            pools.add(dataSource.unwrap(HikariDataSource.class));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
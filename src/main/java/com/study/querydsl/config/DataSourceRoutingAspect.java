@@ -0,0 +1,46 @@
+package com.study.querydsl.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//datasource.routing.primary-methods 에 적은 리파지토리 메서드는 읽기 전용이어도 원본에서 읽는다
+//ex) datasource.routing.primary-methods=MemberJpaRepository.findById,MemberRepositoryImpl.searchSlice
+//트랜잭션보다 바깥에서 감싸야 첫 커넥션을 잡기 전에 설정된다
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "datasource.routing.enabled", havingValue = "true")
+public class DataSourceRoutingAspect {
+
+    private final Set<String> primaryMethods;
+
+    public DataSourceRoutingAspect(@Value("${datasource.routing.primary-methods:}") List<String> primaryMethods) {
+        this.primaryMethods = new HashSet<>(primaryMethods);
+    }
+
+    @Around("execution(public * com.study.querydsl.repository.MemberJpaRepository.*(..))"
+            + " || (execution(* com.study.querydsl.repository.MemberRepositoryCustom.*(..))"
+            + " && target(com.study.querydsl.repository.MemberRepositoryImpl))")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = joinPoint.getTarget().getClass().getSimpleName() + "." + joinPoint.getSignature().getName();
+        if (!primaryMethods.contains(method)) {
+            return joinPoint.proceed();
+        }
+        ReplicaRoutingDataSource.enterPrimary();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ReplicaRoutingDataSource.exitPrimary();
+        }
+    }
+}
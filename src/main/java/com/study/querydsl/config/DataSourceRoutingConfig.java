@@ -0,0 +1,66 @@
+package com.study.querydsl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+//datasource.routing.enabled=true 이면 spring.datasource 를 원본, datasource.replica 를 복제본으로 쓴다
+//읽기 전용 트랜잭션(리파지토리 검색 메서드는 클래스에 readOnly 가 걸려있다)은 복제본으로 간다.
+//트랜잭션 매니저도 readOnly 여부를 라우팅에 먼저 알려주는 것으로 바꾼다.
+//datasource.routing.primary-methods 에 적은 리파지토리 메서드(클래스명.메서드명)는 항상 원본에서 읽는다.
+//datasource.routing.read-your-writes 는 클라이언트(쿠키, ReadYourWritesFilter)마다 따로 센다.
+@Configuration
+@ConditionalOnProperty(name = "datasource.routing.enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @Primary
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties properties,
+                                               @Value("${datasource.replica.url}") String replicaUrl,
+                                               @Value("${datasource.replica.username:}") String replicaUsername,
+                                               @Value("${datasource.replica.password:}") String replicaPassword,
+                                               @Value("${datasource.routing.read-your-writes:1s}") Duration readYourWrites,
+                                               @Value("${datasource.routing.replica-retry:5s}") Duration replicaRetry) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+
+        HikariDataSource replica = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(replicaUrl)
+                .username(StringUtils.hasText(replicaUsername) ? replicaUsername : properties.determineUsername())
+                .password(StringUtils.hasText(replicaPassword) ? replicaPassword : properties.determinePassword())
+                .build();
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+
+        return new ReplicaRoutingDataSource(primary, replica, readYourWrites, replicaRetry);
+    }
+
+    //dataSource 빈은 p6spy 로 감싸져 있으므로 unwrap 으로 라우팅 DataSource 를 꺼낸다
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(DataSource dataSource) throws SQLException {
+        return new ReadYourWritesFilter(dataSource.unwrap(ReplicaRoutingDataSource.class));
+    }
+
+    @Bean
+    public ReplicaRoutingTransactionManager transactionManager(EntityManagerFactory entityManagerFactory, DataSource dataSource,
+                                                               ObjectProvider<TransactionManagerCustomizers> customizers) throws SQLException {
+        ReplicaRoutingTransactionManager transactionManager =
+                new ReplicaRoutingTransactionManager(entityManagerFactory, dataSource.unwrap(ReplicaRoutingDataSource.class));
+        customizers.ifAvailable(customizer -> customizer.customize(transactionManager));
+        return transactionManager;
+    }
+}
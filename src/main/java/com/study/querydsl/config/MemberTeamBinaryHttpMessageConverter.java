@@ -0,0 +1,91 @@
+package com.study.querydsl.config;
+
+import com.study.querydsl.dto.MemberTeamBinaryCodec;
+import com.study.querydsl.dto.MemberTeamDto;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+//Accept: application/x-member-binary 로 요청하면 List<MemberTeamDto>, Page<MemberTeamDto> 응답을
+//MemberTeamBinaryCodec 포맷으로 쓴다. RestTemplate 에 등록하면 클라이언트쪽 디코더로도 쓸 수 있다.
+public class MemberTeamBinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public MemberTeamBinaryHttpMessageConverter() {
+        super(MediaType.parseMediaType(MemberTeamBinaryCodec.MEDIA_TYPE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz) || Page.class.isAssignableFrom(clazz);
+    }
+
+    //제네릭 타입까지 확인해서 MemberTeamDto 목록/페이지만 처리한다
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return isMemberTeam(type) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return isMemberTeam(type) && canWrite(mediaType);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    private boolean isMemberTeam(Type type) {
+        if (type == null) {
+            return false;
+        }
+        ResolvableType resolved = ResolvableType.forType(type);
+        Class<?> raw = resolved.resolve();
+        return raw != null && supports(raw) && resolved.getGeneric(0).resolve() == MemberTeamDto.class;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        byte[] bytes = value instanceof Page
+                ? MemberTeamBinaryCodec.encode((Page<MemberTeamDto>) value)
+                : MemberTeamBinaryCodec.encode((List<MemberTeamDto>) value);
+        outputMessage.getHeaders().setContentLength(bytes.length);
+        outputMessage.getBody().write(bytes);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return decode(ResolvableType.forType(type).resolve(), inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return decode(clazz, inputMessage);
+    }
+
+    //잘못된(잘린) 입력은 HttpMessageNotReadableException (서버면 400)
+    private Object decode(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        Page<MemberTeamDto> page;
+        try {
+            page = MemberTeamBinaryCodec.decode(new BufferedInputStream(inputMessage.getBody()));
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("member binary 를 읽을 수 없습니다: " + e.getMessage(), e, inputMessage);
+        }
+        return clazz != null && Page.class.isAssignableFrom(clazz) ? page : page.getContent();
+    }
+}
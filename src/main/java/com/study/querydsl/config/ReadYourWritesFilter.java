@@ -0,0 +1,58 @@
+package com.study.querydsl.config;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+//read-your-writes 를 클라이언트 단위로 하기 위해 마지막 쓰기 커밋 시각(epoch ms)을 쿠키로 주고받는다
+//요청에서 쓰기가 커밋되면 쿠키를 내려주고, 다음 요청은 쿠키의 시각부터 readYourWrites 동안 원본에서 읽는다.
+//응답을 이미 쓰기 시작한 뒤(스트리밍 등)에 커밋된 쓰기는 쿠키를 못 내려주므로 그 요청 안에서만 원본으로 읽는다.
+//미래 시각이나 숫자가 아닌 값은 무시한다. (쿠키를 고쳐도 자기 요청이 원본으로 갈 뿐이다)
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE = "last-write";
+
+    private final ReplicaRoutingDataSource routing;
+
+    public ReadYourWritesFilter(ReplicaRoutingDataSource routing) {
+        this.routing = routing;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ReplicaRoutingDataSource.enterClient(lastWrite(request), committed -> {
+            if (!response.isCommitted()) {
+                Cookie cookie = new Cookie(COOKIE, Long.toString(committed));
+                cookie.setPath("/");
+                cookie.setHttpOnly(true);
+                cookie.setMaxAge((int) Math.max(1, (routing.getReadYourWrites().toMillis() + 999) / 1000));
+                response.addCookie(cookie);
+            }
+        });
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.exitClient();
+        }
+    }
+
+    private static long lastWrite(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE);
+        if (cookie == null) {
+            return 0;
+        }
+        try {
+            long lastWrite = Long.parseLong(cookie.getValue());
+            return lastWrite <= System.currentTimeMillis() ? lastWrite : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
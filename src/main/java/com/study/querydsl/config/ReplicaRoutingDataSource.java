@@ -0,0 +1,174 @@
+package com.study.querydsl.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+//읽기 전용 트랜잭션은 복제본(replica), 나머지는 원본(primary) 으로 보내는 DataSource
+//하이버네이트는 트랜잭션을 시작할때(동기화 매니저에 readOnly 가 올라가기 전) 커넥션을 잡으므로
+//ReplicaRoutingTransactionManager 가 doBegin 전에 readOnly 여부를 여기에 먼저 알려준다.
+//(p6spy 가 커넥션을 감쌀때 getMetaData() 를 불러서 LazyConnectionDataSourceProxy 로는 미룰 수 없다)
+//
+//복제 지연 대비
+//- 같은 클라이언트가 쓰기 트랜잭션을 커밋한 뒤 readYourWrites 동안은 그 클라이언트의 읽기도 원본으로 보낸다(방금 쓴 값을 못 읽는 일이 없게)
+//  클라이언트 = HTTP 요청이면 ReadYourWritesFilter 가 쿠키로 주고받는 마지막 쓰기 시각, 요청 밖이면 스레드
+//  다른 클라이언트의 쓰기는 영향을 주지 않는다
+//- 복제본 커넥션을 못 얻으면 원본으로 읽고 replicaRetry 동안 복제본을 쓰지 않는다
+//- enterPrimary/exitPrimary 로 감싼 호출(리파지토리 메서드 설정)은 항상 원본
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    public enum Route {PRIMARY, REPLICA}
+
+    private static final ThreadLocal<Integer> forcePrimary = ThreadLocal.withInitial(() -> 0);
+
+    //지금 스레드가 처리중인 클라이언트
+    private static final ThreadLocal<Client> client = ThreadLocal.withInitial(() -> new Client(0, null));
+
+    //REQUIRES_NEW 처럼 트랜잭션이 겹칠 수 있으므로 스택으로 둔다
+    private final ThreadLocal<Deque<Boolean>> readOnlyTransactions = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private volatile long readYourWritesMillis;
+    private final long replicaRetryNanos;
+    private volatile long replicaDownUntil = System.nanoTime();
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration readYourWrites, Duration replicaRetry) {
+        this.primary = primary;
+        this.replica = replica;
+        this.readYourWritesMillis = readYourWrites.toMillis();
+        this.replicaRetryNanos = replicaRetry.toNanos();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Route.PRIMARY, primary);
+        targets.put(Route.REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    //리파지토리 메서드별 설정처럼 원본에서 읽어야 하는 구간을 감싼다 (중첩 가능)
+    //트랜잭션이 시작되기 전에 들어와야 의미가 있다. 이미 복제본 커넥션을 잡은 트랜잭션은 바뀌지 않는다.
+    public static void enterPrimary() {
+        forcePrimary.set(forcePrimary.get() + 1);
+    }
+
+    public static void exitPrimary() {
+        int depth = forcePrimary.get() - 1;
+        if (depth <= 0) {
+            forcePrimary.remove();
+        } else {
+            forcePrimary.set(depth);
+        }
+    }
+
+    void beginTransaction(boolean readOnly) {
+        readOnlyTransactions.get().push(readOnly);
+    }
+
+    void endTransaction() {
+        Deque<Boolean> transactions = readOnlyTransactions.get();
+        transactions.poll();
+        if (transactions.isEmpty()) {
+            readOnlyTransactions.remove();
+        }
+    }
+
+    //요청 하나를 처리하는 동안 그 클라이언트의 마지막 쓰기 시각(epoch ms, 모르면 0)을 둔다
+    //이 요청에서 쓰기가 커밋되면 onWrite 로 커밋 시각을 알려준다 (쿠키로 내려주도록)
+    public static void enterClient(long lastWriteMillis, LongConsumer onWrite) {
+        client.set(new Client(lastWriteMillis, onWrite));
+    }
+
+    public static void exitClient() {
+        client.remove();
+    }
+
+    //쓰기 트랜잭션이 커밋되면 그 시점부터 readYourWrites 동안 이 클라이언트의 읽기를 원본으로 보낸다
+    void writeCommitted() {
+        Client current = client.get();
+        current.lastWriteMillis = System.currentTimeMillis();
+        if (current.onWrite != null) {
+            current.onWrite.accept(current.lastWriteMillis);
+        }
+    }
+
+    public void setReadYourWrites(Duration readYourWrites) {
+        this.readYourWritesMillis = readYourWrites.toMillis();
+    }
+
+    public Duration getReadYourWrites() {
+        return Duration.ofMillis(readYourWritesMillis);
+    }
+
+    public Route currentRoute() {
+        Boolean readOnly = readOnlyTransactions.get().peek();
+        if (forcePrimary.get() > 0 || readOnly == null || !readOnly) {
+            return Route.PRIMARY;
+        }
+        if (System.currentTimeMillis() - client.get().lastWriteMillis < readYourWritesMillis
+                || System.nanoTime() - replicaDownUntil < 0) {
+            return Route.PRIMARY;
+        }
+        return Route.REPLICA;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return currentRoute();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (determineCurrentLookupKey() == Route.REPLICA) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                replicaDownUntil = System.nanoTime() + replicaRetryNanos;
+                log.warn("복제본 커넥션 실패, {}ms 동안 원본으로 읽습니다", replicaRetryNanos / 1_000_000, e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    DataSource getPrimary() {
+        return primary;
+    }
+
+    DataSource getReplica() {
+        return replica;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (primary instanceof Closeable) {
+            ((Closeable) primary).close();
+        }
+        if (replica instanceof Closeable) {
+            ((Closeable) replica).close();
+        }
+    }
+
+    private static class Client {
+        private long lastWriteMillis;
+        private final LongConsumer onWrite;
+
+        private Client(long lastWriteMillis, LongConsumer onWrite) {
+            this.lastWriteMillis = lastWriteMillis;
+            this.onWrite = onWrite;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.study.querydsl.config;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import javax.persistence.EntityManagerFactory;
+
+//트랜잭션 시작 전에 readOnly 여부를 ReplicaRoutingDataSource 에 알려서 첫 커넥션부터 맞는 쪽으로 가게 한다
+public class ReplicaRoutingTransactionManager extends JpaTransactionManager {
+
+    private final ReplicaRoutingDataSource routing;
+
+    public ReplicaRoutingTransactionManager(EntityManagerFactory emf, ReplicaRoutingDataSource routing) {
+        super(emf);
+        this.routing = routing;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        routing.beginTransaction(definition.isReadOnly());
+        try {
+            super.doBegin(transaction, definition);
+        } catch (RuntimeException | Error e) {
+            routing.endTransaction();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        super.doCommit(status);
+        if (!status.isReadOnly()) {
+            routing.writeCommitted();
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            routing.endTransaction();
+        }
+    }
+}
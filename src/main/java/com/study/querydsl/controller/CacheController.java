@@ -0,0 +1,66 @@
+package com.study.querydsl.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.study.querydsl.cache.MemberCountCache;
+import com.study.querydsl.cache.MemberSearchCache;
+import com.study.querydsl.cache.MemberSearchIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+public class CacheController {
+
+    private final MemberCountCache memberCountCache;
+    private final MemberSearchCache memberSearchCache;
+    //member.search.index.enabled=true 일때만 있다
+    private final ObjectProvider<MemberSearchIndex> memberSearchIndex;
+
+    //카운트 캐시 적중률 확인용
+    @GetMapping("/cache/member-count")
+    public Map<String, Object> memberCountCacheStats(){
+        long hits = memberCountCache.getHits();
+        long misses = memberCountCache.getMisses();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", memberCountCache.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return stats;
+    }
+
+    //검색 결과 캐시 적중률, 크기 초과로 밀려난 수
+    @GetMapping("/cache/member-search")
+    public Map<String, Object> memberSearchCacheStats(){
+        CacheStats cacheStats = memberSearchCache.stats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", memberSearchCache.size());
+        stats.put("hits", cacheStats.hitCount());
+        stats.put("misses", cacheStats.missCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        stats.put("evictions", cacheStats.evictionCount());
+        return stats;
+    }
+
+    //메모리 인덱스 크기 - bytesPerMillionMembers 는 지금 크기를 회원 백만명으로 늘려서 본 값
+    @GetMapping("/cache/member-index")
+    public Map<String, Object> memberSearchIndexStats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        MemberSearchIndex index = memberSearchIndex.getIfAvailable();
+        stats.put("enabled", index != null);
+        if (index != null) {
+            MemberSearchIndex.Usage usage = index.usage();
+            stats.put("loaded", usage.isLoaded());
+            stats.put("members", usage.getMembers());
+            stats.put("rows", usage.getRows());
+            stats.put("estimatedBytes", usage.getEstimatedBytes());
+            stats.put("bytesPerMillionMembers", usage.getBytesPerMillionMembers());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,106 @@
+package com.study.querydsl.controller;
+
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamSlice;
+import com.study.querydsl.metrics.SqlCapture;
+import com.study.querydsl.metrics.SqlCapture.CapturedSql;
+import com.study.querydsl.repository.MemberRepository;
+import com.study.querydsl.repository.MemberSearchTemplates;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.springframework.util.StringUtils.hasText;
+
+//검색조건 모양(16가지)별로 실제 나가는 SQL 의 H2 실행계획을 보여준다 (회원명 like 조건은 빼고 등호/범위 조건 4개만 본다)
+//요청 파라미터로 넘긴 값(없으면 기본값)으로 모양마다 컨텐츠/카운트 쿼리를 한번씩 실행해서
+//p6spy 로 잡은 SQL 에 EXPLAIN ANALYZE 를 돌리고 어떤 인덱스를 탔는지, 풀스캔한 테이블이 있는지 정리한다.
+//요청 값은 SQL 문자열에 넣지 않고 잡은 PreparedStatement SQL 에 그대로 바인딩한다.
+@Profile("local")
+@RestController
+@RequiredArgsConstructor
+public class DiagnosticsController {
+
+    //계획의 "/* PUBLIC.IDX_MEMBER_USERNAME: ..." 또는 "/* PUBLIC.MEMBER.tableScan */"
+    private static final Pattern PLAN_SOURCE = Pattern.compile("/\\* PUBLIC\\.(\\w+)(\\.tableScan)?");
+
+    private final MemberSearchTemplates searchTemplates;
+    private final MemberRepository memberRepository;
+    private final SqlCapture sqlCapture;
+    private final JdbcTemplate jdbcTemplate;
+
+    @GetMapping("/diagnostics/plans")
+    public List<Map<String, Object>> plans(MemberSearchCondition sample){
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int shape = 0; shape < 16; shape++) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            if ((shape & 1) != 0) condition.setUsername(hasText(sample.getUsername()) ? sample.getUsername() : "member1");
+            if ((shape & 2) != 0) condition.setTeamName(hasText(sample.getTeamName()) ? sample.getTeamName() : "teamA");
+            if ((shape & 4) != 0) condition.setAgeGoe(sample.getAgeGoe() != null ? sample.getAgeGoe() : 10);
+            if ((shape & 8) != 0) condition.setAgeLoe(sample.getAgeLoe() != null ? sample.getAgeLoe() : 40);
+
+            List<CapturedSql> sqls = sqlCapture.capture(() -> {
+                searchTemplates.search(condition);
+                searchTemplates.count(condition);
+            });
+            List<Map<String, Object>> queries = new ArrayList<>();
+            for (CapturedSql sql : sqls) {
+                queries.add(explain(sql));
+            }
+
+            Map<String, Object> plan = new LinkedHashMap<>();
+            plan.put("condition", condition);
+            plan.put("queries", queries);
+            result.add(plan);
+        }
+        return result;
+    }
+
+    //키셋 슬라이스(/v2, /v3 slice)의 cursor 페이지(없으면 첫 페이지)와 그 다음 페이지 쿼리 실행계획
+    @GetMapping("/diagnostics/slice-plans")
+    public List<Map<String, Object>> slicePlans(MemberSearchCondition condition, String cursor){
+        List<Map<String, Object>> result = new ArrayList<>();
+        MemberTeamSlice[] first = new MemberTeamSlice[1];
+        for (CapturedSql sql : sqlCapture.capture(() -> first[0] = memberRepository.searchSlice(condition, cursor, 20))) {
+            result.add(explain(sql));
+        }
+        if (first[0].getNextCursor() != null) {
+            for (CapturedSql sql : sqlCapture.capture(() -> memberRepository.searchSlice(condition, first[0].getNextCursor(), 20))) {
+                result.add(explain(sql));
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Object> explain(CapturedSql sql) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN ANALYZE " + sql.getSql(), String.class, sql.getParameters().toArray());
+        Set<String> indexes = new LinkedHashSet<>();
+        Set<String> fullScans = new LinkedHashSet<>();
+        Matcher matcher = PLAN_SOURCE.matcher(plan);
+        while (matcher.find()) {
+            if (matcher.group(2) != null) {
+                fullScans.add(matcher.group(1));
+            } else {
+                indexes.add(matcher.group(1));
+            }
+        }
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("sql", sql.getSql());
+        query.put("parameters", sql.getParameters());
+        query.put("indexes", indexes);
+        query.put("fullScans", fullScans);
+        query.put("plan", plan);
+        return query;
+    }
+}
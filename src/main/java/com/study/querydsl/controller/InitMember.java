@@ -3,13 +3,19 @@ package com.study.querydsl.controller;
 import com.study.querydsl.entity.Member;
 import com.study.querydsl.entity.Team;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.util.Arrays;
+import java.util.Random;
 // 코드 설명
 //@Profile 을 하면 애플리케이션이 실행될때 @Profile에 지정된 이름을 찾아
 //application.yml이 실행되고 @postConstruct가 실행 되면서
@@ -27,24 +33,121 @@ public class InitMember {
         initMemberService.init();
     }
 
+    //대용량 샘플데이터
+    //init.member.count, init.team.count 로 건수를 정하고 init.team.skew 를 주면 팀 크기가 zipf 분포가 된다.
+    //batch-size 마다 flush/clear 해서 영속성 컨텍스트가 커지지 않게 하고 insert 는 JDBC 배치로 묶는다.
+    //commit-size 마다 커밋해서 트랜잭션 하나가 너무 커지지 않게 한다.
+    @Slf4j
     @Component
     static class InitMemberService{
 
         @PersistenceContext
         private EntityManager em;
 
-        @Transactional
+        private final TransactionTemplate transactionTemplate;
+
+        @Value("${init.member.count:100}")
+        private int memberCount;
+        @Value("${init.team.count:2}")
+        private int teamCount;
+        //0 이면 팀마다 같은 수, 클수록 앞쪽 팀에 회원이 몰린다
+        @Value("${init.team.skew:0}")
+        private double skew;
+        @Value("${init.batch-size:500}")
+        private int batchSize;
+        @Value("${init.commit-size:10000}")
+        private int commitSize;
+        @Value("${init.seed:42}")
+        private long seed;
+
+        InitMemberService(PlatformTransactionManager transactionManager) {
+            this.transactionTemplate = new TransactionTemplate(transactionManager);
+        }
+
         public void init(){
-            Team teamA = new Team("teamA");
-            Team teamB = new Team("teamB");
-            em.persist(teamA);
-            em.persist(teamB);
-
-            for (int i = 0; i<100; i++){
-                Team selectedTeam = i%2 ==0 ? teamA:teamB;
-                em.persist(new Member("member"+i , i , selectedTeam));
+            long start = System.nanoTime();
+
+            Long[] teamIds = transactionTemplate.execute(status -> {
+                Long[] ids = new Long[teamCount];
+                for (int i = 0; i < teamCount; i++) {
+                    Team team = new Team(teamName(i));
+                    em.persist(team);
+                    ids[i] = team.getId();
+                }
+                return ids;
+            });
+
+            TeamPicker teamPicker = new TeamPicker(teamCount, skew, new Random(seed));
+            for (int from = 0; from < memberCount; from += commitSize) {
+                int to = Math.min(from + commitSize, memberCount);
+                int chunkFrom = from;
+                transactionTemplate.executeWithoutResult(status -> insertMembers(chunkFrom, to, teamIds, teamPicker));
+            }
+
+            long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            log.info("샘플데이터 생성 : 회원 {}명, 팀 {}개, {}ms ({} rows/sec)",
+                    memberCount, teamCount, elapsedMillis, memberCount * 1000L / elapsedMillis);
+        }
+
+        private void insertMembers(int from, int to, Long[] teamIds, TeamPicker teamPicker) {
+            em.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            Team[] teams = teamReferences(teamIds);
+            for (int i = from; i < to; i++) {
+                //changeTeam 을 쓰면 team.members 에 계속 쌓이므로 연관관계 주인쪽만 세팅한다
+                Member member = new Member("member" + i, i % 100);
+                member.setTeam(teams[teamPicker.next()]);
+                em.persist(member);
+
+                if ((i - from + 1) % batchSize == 0) {
+                    em.flush();
+                    em.clear();
+                    teams = teamReferences(teamIds);
+                }
+            }
+        }
+
+        //clear 후에는 프록시를 다시 받아온다(select 없이 id 만 가진 참조)
+        private Team[] teamReferences(Long[] teamIds) {
+            return Arrays.stream(teamIds)
+                    .map(id -> em.getReference(Team.class, id))
+                    .toArray(Team[]::new);
+        }
+
+        private static String teamName(int index) {
+            return index < 26 ? "team" + (char) ('A' + index) : "team" + index;
+        }
+    }
+
+    //skew 가 0 이면 차례대로 돌아가며 고르고, 아니면 k 번째 팀을 1/k^skew 비율로 고른다
+    static class TeamPicker {
+
+        private final int teamCount;
+        private final double[] cumulative;
+        private final Random random;
+        private int sequence;
+
+        TeamPicker(int teamCount, double skew, Random random) {
+            this.teamCount = teamCount;
+            this.random = random;
+            if (skew <= 0) {
+                this.cumulative = null;
+                return;
+            }
+            this.cumulative = new double[teamCount];
+            double sum = 0;
+            for (int k = 0; k < teamCount; k++) {
+                sum += 1.0 / Math.pow(k + 1, skew);
+                cumulative[k] = sum;
             }
         }
 
+        int next() {
+            if (cumulative == null) {
+                return sequence++ % teamCount;
+            }
+            double target = random.nextDouble() * cumulative[teamCount - 1];
+            int index = Arrays.binarySearch(cumulative, target);
+            return index >= 0 ? index : Math.min(-index - 1, teamCount - 1);
+        }
     }
 }
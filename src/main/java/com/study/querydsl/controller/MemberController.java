@@ -1,16 +1,40 @@
 package com.study.querydsl.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.querydsl.core.types.Predicate;
 import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamColumns;
 import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.dto.MemberTeamJson;
+import com.study.querydsl.dto.MemberTeamSlice;
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.metrics.SqlBudget;
 import com.study.querydsl.repository.MemberJpaRepository;
+import com.study.querydsl.repository.MemberPredicateGuard;
 import com.study.querydsl.repository.MemberRepository;
+import com.study.querydsl.repository.PagingStrategy;
+import com.study.querydsl.repository.RejectedPredicateException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.querydsl.binding.QuerydslPredicate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequiredArgsConstructor
@@ -18,19 +42,122 @@ public class MemberController {
 
     private  final MemberJpaRepository memberJpaRepository;
     private  final MemberRepository memberRepository;
+    private  final ObjectMapper objectMapper;
+    private  final MemberPredicateGuard memberPredicateGuard;
+
+    @Value("${member.stream.fetch-size:500}")
+    private int streamFetchSize;
+
+    @SqlBudget(1)
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition){
         return  memberJpaRepository.search(condition);
     }
 
+    //NDJSON(한 줄에 한 건) 스트리밍 - 조회되는 대로 바로 응답에 쓴다
+    @GetMapping("/v1/members/stream")
+    public void streamMemberV1(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            int[] count = {0};
+            memberJpaRepository.streamSearch(condition, streamFetchSize, dto -> {
+                try {
+                    generator.writeObject(dto);
+                    generator.writeRaw('\n');
+                    if (++count[0] % streamFetchSize == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    //컬럼형 결과로 조회해서 바로 직렬화한다 (응답 JSON 모양은 /v1/members 와 같다)
+    @SqlBudget(1)
+    @GetMapping("/v1/members/columnar")
+    public MemberTeamColumns searchMemberColumnar(MemberSearchCondition condition){
+        return  memberJpaRepository.searchColumns(condition, streamFetchSize);
+    }
+
+    //조회 결과 행을 DTO 없이 JsonGenerator 로 바로 응답에 쓴다 (응답 JSON 은 /v1/members 와 같다)
+    @SqlBudget(1)
+    @GetMapping("/v1/members/raw")
+    public void searchMemberRaw(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            memberJpaRepository.streamSearchRows(condition, streamFetchSize, row -> {
+                try {
+                    MemberTeamJson.writeRow(generator, (Long) row[0], (String) row[1], (Integer) row[2],
+                            (Long) row[3], (String) row[4]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        }
+    }
+
+    @SqlBudget(2)
     @GetMapping("/v2/members")
     public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable){
+        memberPredicateGuard.checkOffset(pageable);
         return  memberRepository.searchPageSimple(condition,pageable);
     }
 
+    //paging=DEFERRED_JOIN 이면 id 조회 + 채우기 + 카운트
+    //estimateTotal=true 면 카운트 쿼리 대신 통계로 추정한다 (응답의 totalEstimated)
+    @SqlBudget(3)
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable){
-        return  memberRepository.searchPageComplex(condition,pageable);
+    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable,
+                                              @RequestParam(defaultValue = "OFFSET") PagingStrategy paging,
+                                              @RequestParam(defaultValue = "false") boolean estimateTotal){
+        memberPredicateGuard.checkOffset(pageable);
+        return  estimateTotal
+                ? memberRepository.searchPageEstimated(condition,pageable,paging)
+                : memberRepository.searchPageComplex(condition,pageable,paging);
+    }
+
+    //커서 기반 페이징 - 다음 요청에는 응답의 nextCursor를 cursor로 넘긴다.
+    //size 는 /v4 와 같이 member.predicate.max-page-size 까지
+    @SqlBudget(1)
+    @GetMapping({"/v2/members/slice", "/v3/members/slice"})
+    public MemberTeamSlice searchMemberSlice(MemberSearchCondition condition,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "20") int size){
+        memberPredicateGuard.checkSize(size);
+        return  memberRepository.searchSlice(condition,cursor,size);
+    }
+
+    //querydsl 조건으로 받는 키셋 페이징 (받을 수 있는 파라미터는 MemberRepository.customize)
+    //실행 전에 MemberPredicateGuard 가 비용을 확인해서 너무 넓은 조건은 400 으로 거절한다
+    //이름(같음/앞부분) 조건이 있으면 비용 확인에 username 인덱스를 세는 select 가 하나 더 나간다
+    @SqlBudget(2)
+    @GetMapping("/v4/members")
+    public MemberTeamSlice searchMemberV4(@QuerydslPredicate(root = Member.class, bindings = MemberRepository.class) Predicate predicate,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(defaultValue = "20") int size){
+        MemberSearchCondition condition = memberPredicateGuard.check(predicate, size);
+        return  memberRepository.searchSlice(condition,cursor,size,memberPredicateGuard.getTimeout());
+    }
+
+    //잘못된 조건/커서, 거절된 조건 (그 외 예외는 메시지를 내보내지 않는다)
+    @ExceptionHandler(RejectedPredicateException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> badRequest(RejectedPredicateException e){
+        return Collections.singletonMap("message", e.getMessage());
+    }
+
+    //statement timeout 으로 DB 가 취소한 쿼리
+    @ExceptionHandler(QueryTimeoutException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> queryTimeout(QueryTimeoutException e){
+        return Collections.singletonMap("message", "조회 시간이 초과되었습니다");
     }
 
 }
@@ -0,0 +1,79 @@
+package com.study.querydsl.controller;
+
+import com.study.querydsl.metrics.RepositoryMetricsAspect;
+import com.study.querydsl.metrics.SqlStatementInterceptor;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private final MeterRegistry registry;
+
+    //리파지토리 메서드별 응답시간(ms)/행 수, url 별 요청당 SQL 수
+    //총 소요시간이 큰 메서드(핫 쿼리)부터 보여준다
+    @GetMapping("/metrics/queries")
+    public Map<String, Object> queries(){
+        List<Map<String, Object>> methods = new ArrayList<>();
+        for (Timer timer : registry.find(RepositoryMetricsAspect.TIMER).timers()) {
+            String method = timer.getId().getTag("method");
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("method", method);
+            stats.put("outcome", timer.getId().getTag("outcome"));
+            stats.put("count", snapshot.count());
+            stats.put("totalMs", snapshot.total(TimeUnit.MILLISECONDS));
+            stats.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+            stats.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                stats.put(label(percentile) + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+            }
+            DistributionSummary rows = registry.find(RepositoryMetricsAspect.ROWS).tag("method", method).summary();
+            if (rows != null) {
+                stats.put("rowsMean", rows.mean());
+                stats.put("rowsMax", rows.max());
+            }
+            methods.add(stats);
+        }
+        methods.sort(Comparator.comparing((Map<String, Object> stats) -> (Double) stats.get("totalMs")).reversed());
+
+        List<Map<String, Object>> requests = new ArrayList<>();
+        for (DistributionSummary summary : registry.find(SqlStatementInterceptor.STATEMENTS).summaries()) {
+            HistogramSnapshot snapshot = summary.takeSnapshot();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("uri", summary.getId().getTag("uri"));
+            stats.put("requests", snapshot.count());
+            stats.put("statementsMean", snapshot.mean());
+            stats.put("statementsMax", snapshot.max());
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                stats.put("statements" + Character.toUpperCase(label(percentile).charAt(0)) + label(percentile).substring(1),
+                        percentile.value());
+            }
+            requests.add(stats);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("repository", methods);
+        result.put("sqlPerRequest", requests);
+        return result;
+    }
+
+    //0.95 -> p95
+    private static String label(ValueAtPercentile percentile) {
+        return "p" + Math.round(percentile.percentile() * 100);
+    }
+}
@@ -0,0 +1,24 @@
+package com.study.querydsl.controller;
+
+import com.study.querydsl.dto.TeamStatsDto;
+import com.study.querydsl.metrics.SqlBudget;
+import com.study.querydsl.repository.TeamStatsRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamStatsRepository teamStatsRepository;
+
+    //member 를 group by 하지 않고 미리 집계해둔 TeamStats 만 읽는다
+    @SqlBudget(1)
+    @GetMapping("/teams/stats")
+    public List<TeamStatsDto> teamStats(){
+        return teamStatsRepository.findAll();
+    }
+}
@@ -0,0 +1,22 @@
+package com.study.querydsl.dto;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+//totalElements 가 카운트 쿼리가 아니라 통계로 추정한 값일 수 있는 페이지
+//totalEstimated 가 true 면 "약 N 건" 으로 보여주면 된다.
+public class EstimatedPage<T> extends PageImpl<T> {
+
+    private final boolean totalEstimated;
+
+    public EstimatedPage(List<T> content, Pageable pageable, long total, boolean totalEstimated) {
+        super(content, pageable, total);
+        this.totalEstimated = totalEstimated;
+    }
+
+    public boolean isTotalEstimated() {
+        return totalEstimated;
+    }
+}
@@ -2,13 +2,30 @@ package com.study.querydsl.dto;
 
 import lombok.Data;
 
+import static org.springframework.util.StringUtils.hasText;
+
 @Data
 public class MemberSearchCondition {
     //회원명, 팀명 , 나이(ageGoe,ageLoe)
 
     private String username;
+    //회원명 앞부분 / 회원명 일부 (like 'x%' / like '%x%', % 와 _ 는 글자 그대로 찾는다)
+    private String usernamePrefix;
+    private String usernameContains;
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
 
+    //캐시 키로 쓰기 위한 복사본
+    //where 절에서 무시되는 빈 문자열은 null 로 맞춰서 같은 쿼리는 같은 키가 되도록 한다.
+    public MemberSearchCondition normalize() {
+        MemberSearchCondition normalized = new MemberSearchCondition();
+        normalized.setUsername(hasText(username) ? username : null);
+        normalized.setUsernamePrefix(hasText(usernamePrefix) ? usernamePrefix : null);
+        normalized.setUsernameContains(hasText(usernameContains) ? usernameContains : null);
+        normalized.setTeamName(hasText(teamName) ? teamName : null);
+        normalized.setAgeGoe(ageGoe);
+        normalized.setAgeLoe(ageLoe);
+        return normalized;
+    }
 }
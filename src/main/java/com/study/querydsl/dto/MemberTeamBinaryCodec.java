@@ -0,0 +1,284 @@
+package com.study.querydsl.dto;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+//서비스간 호출용 MemberTeamDto 목록/페이지 바이너리 포맷 (application/x-member-binary)
+//정수는 모두 varint(음수가 나올 수 있는 값은 zigzag), 문자열은 varint 길이 + UTF-8 바이트다.
+//팀은 응답마다 사전(teamId, teamName)으로 한번만 쓰고 행에는 사전 번호만 쓴다.
+//
+//  'M' 버전(1)
+//  flags              : 1 이면 페이지 (number, size, totalElements 가 이어진다)
+//  팀 사전 수, (teamId, teamName)...
+//  행 수, (memberId, username, age, 팀 번호(0 = 팀 없음, n = 사전의 n-1 번째))...
+//
+//문자열 길이는 null 을 구분하려고 실제 길이 + 1 로 쓴다 (0 = null).
+//
+//읽을때는 입력을 믿지 않는다. 길이/개수/팀 번호가 범위를 벗어나면 IOException 이고
+//개수나 길이만 보고 큰 배열을 미리 잡지 않는다 (실제로 읽은 만큼만 늘린다).
+public final class MemberTeamBinaryCodec {
+
+    public static final String MEDIA_TYPE = "application/x-member-binary";
+
+    private static final int MAGIC = 'M';
+    private static final int VERSION = 1;
+    private static final int FLAG_PAGE = 1;
+    //개수/길이로 미리 잡는 최대 크기
+    private static final int MAX_PREALLOCATE = 1024;
+
+    private MemberTeamBinaryCodec() {
+    }
+
+    public static byte[] encode(List<MemberTeamDto> content) {
+        return encode(content, null);
+    }
+
+    public static byte[] encode(Page<MemberTeamDto> page) {
+        return encode(page.getContent(), page);
+    }
+
+    private static byte[] encode(List<MemberTeamDto> content, Page<?> page) {
+        Output out = new Output(16 + content.size() * 16);
+        out.write(MAGIC);
+        out.write(VERSION);
+        if (page == null) {
+            out.writeVarint(0);
+        } else {
+            out.writeVarint(FLAG_PAGE);
+            out.writeVarint(page.getNumber());
+            out.writeVarint(page.getSize());
+            out.writeVarint(page.getTotalElements());
+        }
+
+        Map<Team, Integer> dictionary = new HashMap<>();
+        List<Team> teams = new ArrayList<>();
+        int[] teamCodes = new int[content.size()];
+        for (int i = 0; i < content.size(); i++) {
+            MemberTeamDto dto = content.get(i);
+            if (dto.getTeamId() == null) {
+                continue;
+            }
+            Team team = new Team(dto.getTeamId(), dto.getTeamName());
+            Integer code = dictionary.get(team);
+            if (code == null) {
+                code = teams.size() + 1;
+                dictionary.put(team, code);
+                teams.add(team);
+            }
+            teamCodes[i] = code;
+        }
+        out.writeVarint(teams.size());
+        for (Team team : teams) {
+            out.writeVarint(zigzag(team.id));
+            out.writeString(team.name);
+        }
+
+        out.writeVarint(content.size());
+        for (int i = 0; i < content.size(); i++) {
+            MemberTeamDto dto = content.get(i);
+            out.writeVarint(zigzag(dto.getMemberId()));
+            out.writeString(dto.getUsername());
+            out.writeVarint(zigzag(dto.getAge()));
+            out.writeVarint(teamCodes[i]);
+        }
+        return out.toByteArray();
+    }
+
+    public static Page<MemberTeamDto> decode(byte[] bytes) throws IOException {
+        return decode(new ByteArrayInputStream(bytes));
+    }
+
+    //목록으로 인코딩된 응답은 페이지 정보 없는 PageImpl 로 돌려준다
+    //한 바이트씩 읽으므로 버퍼가 없는 스트림은 BufferedInputStream 으로 감싸서 넘긴다
+    public static Page<MemberTeamDto> decode(InputStream in) throws IOException {
+        if (readByte(in) != MAGIC) {
+            throw new IOException("member binary 포맷이 아닙니다");
+        }
+        int version = readByte(in);
+        if (version != VERSION) {
+            throw new IOException("지원하지 않는 member binary 버전입니다: " + version);
+        }
+        boolean paged = (readVarint(in) & FLAG_PAGE) != 0;
+        int number = 0;
+        int size = 0;
+        long total = 0;
+        if (paged) {
+            number = readCount(in, "페이지 번호");
+            size = readCount(in, "페이지 크기");
+            total = readVarint(in);
+            if (size == 0 || total < 0) {
+                throw new IOException("잘못된 페이지 정보입니다");
+            }
+        }
+
+        int teamCount = readCount(in, "팀 수");
+        List<Long> teamIds = new ArrayList<>(Math.min(teamCount, MAX_PREALLOCATE));
+        List<String> teamNames = new ArrayList<>(Math.min(teamCount, MAX_PREALLOCATE));
+        for (int i = 0; i < teamCount; i++) {
+            teamIds.add(unzigzag(readVarint(in)));
+            teamNames.add(readString(in));
+        }
+
+        int rowCount = readCount(in, "행 수");
+        List<MemberTeamDto> content = new ArrayList<>(Math.min(rowCount, MAX_PREALLOCATE));
+        for (int i = 0; i < rowCount; i++) {
+            long memberId = unzigzag(readVarint(in));
+            String username = readString(in);
+            long age = unzigzag(readVarint(in));
+            if (age < Integer.MIN_VALUE || age > Integer.MAX_VALUE) {
+                throw new IOException("나이가 int 범위를 벗어났습니다: " + age);
+            }
+            long team = readVarint(in);
+            if (team < 0 || team > teamCount) {
+                throw new IOException("없는 팀 번호입니다: " + team + " (팀 " + teamCount + "개)");
+            }
+            content.add(team == 0
+                    ? new MemberTeamDto(memberId, username, (int) age, null, null)
+                    : new MemberTeamDto(memberId, username, (int) age, teamIds.get((int) team - 1), teamNames.get((int) team - 1)));
+        }
+        return paged ? new PageImpl<>(content, PageRequest.of(number, size), total) : new PageImpl<>(content);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint 가 너무 깁니다");
+    }
+
+    //개수/번호는 0 이상 int 범위
+    private static int readCount(InputStream in, String name) throws IOException {
+        long value = readVarint(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException(name + "가 범위를 벗어났습니다: " + Long.toUnsignedString(value));
+        }
+        return (int) value;
+    }
+
+    //길이가 커도 실제로 읽은 만큼만 버퍼를 늘린다 (입력이 짧으면 EOFException)
+    private static String readString(InputStream in) throws IOException {
+        long encoded = readVarint(in);
+        if (encoded == 0) {
+            return null;
+        }
+        if (encoded < 0 || encoded - 1 > Integer.MAX_VALUE - 8) {
+            throw new IOException("문자열 길이가 범위를 벗어났습니다: " + Long.toUnsignedString(encoded - 1));
+        }
+        int length = (int) (encoded - 1);
+        byte[] bytes = new byte[Math.min(length, MAX_PREALLOCATE)];
+        int read = 0;
+        while (read < length) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+            }
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static class Team {
+        private final Long id;
+        private final String name;
+
+        private Team(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Team)) return false;
+            Team team = (Team) o;
+            return id.equals(team.id) && Objects.equals(name, team.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+    //ByteArrayOutputStream 의 synchronized write 를 피하려고 배열을 직접 늘린다
+    private static class Output {
+        private byte[] buffer;
+        private int position;
+
+        private Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+
+        private void write(int b) {
+            ensure(1);
+            buffer[position++] = (byte) b;
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.study.querydsl.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+//대용량 내보내기용 컬럼형 결과 (MemberTeamDto 리스트 대신 컬럼별 배열에 담는다)
+//행마다 DTO 객체 + Long 두개 + 팀 이름 String 을 만들지 않고
+//id/나이는 원시 배열에, 팀 이름은 사전(팀 이름 목록) + 사전 번호 배열로 저장한다.
+//팀이 없는 회원은 팀 번호가 NO_TEAM 이고 teamId, teamName 이 null 로 보인다.
+//JSON 은 List<MemberTeamDto> 와 같은 모양(행 배열)으로 나간다.
+@JsonSerialize(using = MemberTeamColumnsSerializer.class)
+public class MemberTeamColumns implements Iterable<MemberTeamColumns.Row> {
+
+    public static final int NO_TEAM = -1;
+
+    private final int size;
+    private final long[] memberIds;
+    private final String[] usernames;
+    private final int[] ages;
+    private final long[] teamIds;
+    private final int[] teamCodes;
+    private final String[] teamNames;
+
+    private MemberTeamColumns(Builder builder) {
+        this.size = builder.size;
+        this.memberIds = Arrays.copyOf(builder.memberIds, size);
+        this.usernames = Arrays.copyOf(builder.usernames, size);
+        this.ages = Arrays.copyOf(builder.ages, size);
+        this.teamIds = Arrays.copyOf(builder.teamIds, size);
+        this.teamCodes = Arrays.copyOf(builder.teamCodes, size);
+        this.teamNames = new String[builder.dictionary.size()];
+        builder.dictionary.forEach((name, code) -> teamNames[code] = name);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getMemberId(int row) {
+        return memberIds[row];
+    }
+
+    public String getUsername(int row) {
+        return usernames[row];
+    }
+
+    public int getAge(int row) {
+        return ages[row];
+    }
+
+    public Long getTeamId(int row) {
+        return teamCodes[row] == NO_TEAM ? null : teamIds[row];
+    }
+
+    public int getTeamCode(int row) {
+        return teamCodes[row];
+    }
+
+    public String getTeamName(int row) {
+        int code = teamCodes[row];
+        return code == NO_TEAM ? null : teamNames[code];
+    }
+
+    //팀 이름 사전 (teamCode 가 인덱스)
+    public String[] getTeamNames() {
+        return teamNames.clone();
+    }
+
+    public MemberTeamDto toDto(int row) {
+        return new MemberTeamDto(getMemberId(row), getUsername(row), getAge(row), getTeamId(row), getTeamName(row));
+    }
+
+    //행 뷰 - 이터레이터는 Row 하나를 재사용하므로 next() 결과를 모아두면 안된다(필요하면 toDto())
+    @Override
+    public Iterator<Row> iterator() {
+        Row row = new Row();
+        return new Iterator<Row>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Row next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                row.index = next++;
+                return row;
+            }
+        };
+    }
+
+    public class Row {
+        private int index;
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getMemberId() {
+            return MemberTeamColumns.this.getMemberId(index);
+        }
+
+        public String getUsername() {
+            return MemberTeamColumns.this.getUsername(index);
+        }
+
+        public int getAge() {
+            return MemberTeamColumns.this.getAge(index);
+        }
+
+        public Long getTeamId() {
+            return MemberTeamColumns.this.getTeamId(index);
+        }
+
+        public String getTeamName() {
+            return MemberTeamColumns.this.getTeamName(index);
+        }
+
+        public MemberTeamDto toDto() {
+            return MemberTeamColumns.this.toDto(index);
+        }
+    }
+
+    //한 행씩 추가하고 build() 에서 실제 크기로 잘라낸다
+    public static class Builder {
+        private int size;
+        private long[] memberIds = new long[16];
+        private String[] usernames = new String[16];
+        private int[] ages = new int[16];
+        private long[] teamIds = new long[16];
+        private int[] teamCodes = new int[16];
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder add(long memberId, String username, int age, Long teamId, String teamName) {
+            if (size == memberIds.length) {
+                int capacity = size * 2;
+                memberIds = Arrays.copyOf(memberIds, capacity);
+                usernames = Arrays.copyOf(usernames, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+                teamIds = Arrays.copyOf(teamIds, capacity);
+                teamCodes = Arrays.copyOf(teamCodes, capacity);
+            }
+            memberIds[size] = memberId;
+            usernames[size] = username;
+            ages[size] = age;
+            if (teamId == null) {
+                teamCodes[size] = NO_TEAM;
+            } else {
+                teamIds[size] = teamId;
+                teamCodes[size] = dictionary.computeIfAbsent(teamName, name -> dictionary.size());
+            }
+            size++;
+            return this;
+        }
+
+        public MemberTeamColumns build() {
+            return new MemberTeamColumns(this);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.study.querydsl.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+//컬럼 배열에서 바로 읽어서 쓴다 (행마다 MemberTeamDto 를 만들지 않는다)
+//필드 이름과 순서는 MemberTeamDto 를 직렬화한 것과 같다.
+public class MemberTeamColumnsSerializer extends StdSerializer<MemberTeamColumns> {
+
+    public MemberTeamColumnsSerializer() {
+        super(MemberTeamColumns.class);
+    }
+
+    @Override
+    public void serialize(MemberTeamColumns columns, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartArray(columns.size());
+        for (int row = 0; row < columns.size(); row++) {
+            MemberTeamJson.writeRow(generator, columns.getMemberId(row), columns.getUsername(row), columns.getAge(row),
+                    columns.getTeamId(row), columns.getTeamName(row));
+        }
+        generator.writeEndArray();
+    }
+}
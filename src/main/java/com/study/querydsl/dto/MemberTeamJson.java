@@ -0,0 +1,27 @@
+package com.study.querydsl.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+//MemberTeamDto 를 직렬화한 것과 같은 JSON 객체 하나를 값에서 바로 쓴다 (DTO, 리플렉션 없이)
+public final class MemberTeamJson {
+
+    private MemberTeamJson() {
+    }
+
+    public static void writeRow(JsonGenerator generator, long memberId, String username, int age,
+                                Long teamId, String teamName) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("memberId", memberId);
+        generator.writeStringField("username", username);
+        generator.writeNumberField("age", age);
+        if (teamId == null) {
+            generator.writeNullField("teamId");
+        } else {
+            generator.writeNumberField("teamId", teamId);
+        }
+        generator.writeStringField("teamName", teamName);
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,20 @@
+package com.study.querydsl.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+//카운트 쿼리 없이 다음 페이지 존재 여부와 다음 커서만 내려준다.
+@Getter
+public class MemberTeamSlice {
+
+    private final List<MemberTeamDto> content;
+    private final boolean hasNext;
+    private final String nextCursor;
+
+    public MemberTeamSlice(List<MemberTeamDto> content, boolean hasNext) {
+        this.content = content;
+        this.hasNext = hasNext;
+        this.nextCursor = hasNext ? MemberCursor.of(content.get(content.size() - 1)).encode() : null;
+    }
+}
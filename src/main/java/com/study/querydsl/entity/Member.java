@@ -5,11 +5,21 @@ import lombok.*;
 import javax.persistence.*;
 
 @Entity
+//검색조건(MemberSearchPredicates) 별 인덱스. 팀 + 나이 범위는 (team_id, age) 복합 인덱스 하나로 처리한다
+//(age, member_id) 는 키셋 슬라이스의 order by age, member_id 와 같은 순서라 정렬 없이 size + 1 건만 읽고 멈춘다 (나이 범위 조건도 이 인덱스로 처리)
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_team_age", columnList = "team_id, age"),
+        @Index(name = "idx_member_age_id", columnList = "age, member_id")
+})
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "username","age"})
 public class Member {
-    @Id @GeneratedValue
+    //시퀀스를 allocationSize 만큼 한번에 받아와서(pooled) insert 마다 시퀀스를 호출하지 않는다
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
+    @SequenceGenerator(name = "member_seq_generator", sequenceName = "member_seq", allocationSize = 50)
     @Column(name = "member_id")
     private Long id;
     private String username;
@@ -0,0 +1,32 @@
+package com.study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+//팀별 회원 집계(회원 수, 나이 합/최소/최대) 읽기 모델
+//member 를 group by 하지 않고 팀 수만큼만 읽으면 되도록 TeamStatsMaintainer 가 회원 변경분으로 갱신한다.
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class TeamStats {
+
+    @Id
+    @Column(name = "team_id")
+    private Long teamId;
+    private long memberCount;
+    private long ageSum;
+    //회원이 없으면 null
+    private Integer minAge;
+    private Integer maxAge;
+
+    public double getAverageAge() {
+        return memberCount == 0 ? 0 : (double) ageSum / memberCount;
+    }
+}
@@ -0,0 +1,67 @@
+package com.study.querydsl.event;
+
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.query.spi.EntityGraphQueryHint;
+import org.hibernate.engine.spi.QueryParameters;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.hql.internal.ast.ASTQueryTranslatorFactory;
+import org.hibernate.hql.internal.ast.QueryTranslatorImpl;
+import org.hibernate.hql.internal.ast.tree.InsertStatement;
+import org.hibernate.hql.internal.ast.tree.RestrictableStatement;
+import org.hibernate.hql.internal.ast.tree.Statement;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+//JPQL 벌크 연산(querydsl execute(), @Modifying, em.createQuery(...).executeUpdate())을 실행하기 직전에
+//대상 엔티티가 Member, Team 이면 MemberChangeHandler.onBulkWrite 로 알려준다.
+//벌크 연산은 엔티티 이벤트가 없고 SQL 모양만으로는 엔티티 하나의 update/delete 와 구분할 수 없어서
+//하이버네이트가 JPQL 을 실행하는 QueryTranslator 를 감싼다. (hibernate.query.factory_class)
+@Component
+public class BulkWriteQueryTranslatorFactory extends ASTQueryTranslatorFactory implements HibernatePropertiesCustomizer {
+
+    //EntityManagerFactory 를 만들때 필요한 빈이므로 이벤트 리스너는 실행할때 꺼낸다
+    private final ObjectProvider<MemberChangeEventListener> memberChangeEventListener;
+
+    public BulkWriteQueryTranslatorFactory(ObjectProvider<MemberChangeEventListener> memberChangeEventListener) {
+        this.memberChangeEventListener = memberChangeEventListener;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.QUERY_TRANSLATOR, this);
+    }
+
+    @Override
+    public QueryTranslator createQueryTranslator(String queryIdentifier, String queryString, Map filters,
+                                                 SessionFactoryImplementor factory, EntityGraphQueryHint entityGraphQueryHint) {
+        return new QueryTranslatorImpl(queryIdentifier, queryString, filters, factory, entityGraphQueryHint) {
+            @Override
+            public int executeUpdate(QueryParameters queryParameters, SharedSessionContractImplementor session) throws HibernateException {
+                Class<?> target = targetEntity(getSqlAST());
+                if (target == Member.class || target == Team.class) {
+                    memberChangeEventListener.ifAvailable(listener -> listener.publishBulkWrite(target));
+                }
+                return super.executeUpdate(queryParameters, session);
+            }
+        };
+    }
+
+    //update/delete 는 from 절의 엔티티, insert ... select 는 into 절의 엔티티
+    private static Class<?> targetEntity(Statement statement) {
+        if (statement instanceof RestrictableStatement) {
+            return ((RestrictableStatement) statement).getFromClause().getFromElement().getEntityPersister().getMappedClass();
+        }
+        if (statement instanceof InsertStatement) {
+            return ((InsertStatement) statement).getIntoClause().getQueryable().getMappedClass();
+        }
+        return null;
+    }
+}
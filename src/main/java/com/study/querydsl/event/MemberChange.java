@@ -0,0 +1,30 @@
+package com.study.querydsl.event;
+
+import lombok.Getter;
+import lombok.ToString;
+
+//회원 한 행의 변경
+//INSERT 는 before 가, DELETE 는 after 가 null 이다.
+//UPDATE 인데 before 가 null 이면 변경 전 값을 알 수 없는 경우(detached 엔티티 update 등)다.
+@Getter
+@ToString
+public class MemberChange {
+
+    public enum Type { INSERT, UPDATE, DELETE }
+
+    private final Type type;
+    private final Long memberId;
+    private final MemberSnapshot before;
+    private final MemberSnapshot after;
+
+    public MemberChange(Type type, Long memberId, MemberSnapshot before, MemberSnapshot after) {
+        this.type = type;
+        this.memberId = memberId;
+        this.before = before;
+        this.after = after;
+    }
+
+    public boolean isBeforeUnknown() {
+        return type == Type.UPDATE && before == null;
+    }
+}
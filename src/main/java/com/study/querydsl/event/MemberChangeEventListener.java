@@ -0,0 +1,149 @@
+package com.study.querydsl.event;
+
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.ActionQueue;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+//Member, Team 의 insert/update/delete 를 변경 전후 값과 함께 MemberChangeHandler 들에게 알려준다.
+//JPA 엔티티 리스너(@PostUpdate)는 변경 전 값을 알 수 없어서 하이버네이트 이벤트 리스너를 쓴다.
+//querydsl execute() 같은 벌크 연산은 이벤트가 발생하지 않으므로 BulkWriteQueryTranslatorFactory 가 publishBulkWrite 로 따로 알려준다.
+//변경이 있던 트랜잭션은 커밋 직전/완료 후에 한번씩 다시 알려준다.
+@Component
+@RequiredArgsConstructor
+public class MemberChangeEventListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory emf;
+    private final List<MemberChangeHandler> handlers;
+    //트랜잭션마다 완료 콜백을 한번만 등록하기 위해 등록한 세션을 기억한다
+    private final ThreadLocal<EventSource> registered = new ThreadLocal<>();
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        registerCompletion(event.getSession());
+        if (event.getEntity() instanceof Member) {
+            publish(new MemberChange(MemberChange.Type.INSERT, (Long) event.getId(), null, snapshot(event.getPersister(), event.getState())));
+        } else if (event.getEntity() instanceof Team) {
+            publish(new TeamChange(MemberChange.Type.INSERT, (Long) event.getId(), null, teamName(event.getPersister(), event.getState())));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        registerCompletion(event.getSession());
+        if (event.getEntity() instanceof Member) {
+            MemberSnapshot before = event.getOldState() != null
+                    ? snapshot(event.getPersister(), event.getOldState())
+                    : null;
+            publish(new MemberChange(MemberChange.Type.UPDATE, (Long) event.getId(), before, snapshot(event.getPersister(), event.getState())));
+        } else if (event.getEntity() instanceof Team) {
+            String newName = teamName(event.getPersister(), event.getState());
+            String oldName = event.getOldState() != null ? teamName(event.getPersister(), event.getOldState()) : null;
+            publish(new TeamChange(MemberChange.Type.UPDATE, (Long) event.getId(), oldName, newName));
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        registerCompletion(event.getSession());
+        if (event.getEntity() instanceof Member) {
+            publish(new MemberChange(MemberChange.Type.DELETE, (Long) event.getId(), snapshot(event.getPersister(), event.getDeletedState()), null));
+        } else if (event.getEntity() instanceof Team) {
+            publish(new TeamChange(MemberChange.Type.DELETE, (Long) event.getId(), teamName(event.getPersister(), event.getDeletedState()), null));
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    //하이버네이트 트랜잭션 완료 콜백은 커밋할때의 플러시가 끝난 다음에 불린다
+    private void registerCompletion(EventSource session) {
+        if (registered.get() == session) {
+            return;
+        }
+        registered.set(session);
+        ActionQueue actionQueue = session.getActionQueue();
+        actionQueue.registerProcess((BeforeTransactionCompletionProcess) s -> {
+            for (MemberChangeHandler handler : handlers) {
+                handler.beforeTransactionCompletion();
+            }
+        });
+        actionQueue.registerProcess((AfterTransactionCompletionProcess) (success, s) -> {
+            registered.remove();
+            for (MemberChangeHandler handler : handlers) {
+                handler.afterTransactionCompletion(success);
+            }
+        });
+    }
+
+    public void publishBulkWrite(Class<?> entityType) {
+        for (MemberChangeHandler handler : handlers) {
+            handler.onBulkWrite(entityType);
+        }
+    }
+
+    private void publish(MemberChange change) {
+        for (MemberChangeHandler handler : handlers) {
+            handler.onMemberChange(change);
+        }
+    }
+
+    private void publish(TeamChange change) {
+        for (MemberChangeHandler handler : handlers) {
+            handler.onTeamChange(change);
+        }
+    }
+
+    private static MemberSnapshot snapshot(EntityPersister persister, Object[] state) {
+        EntityMetamodel metamodel = persister.getEntityMetamodel();
+        String username = (String) state[metamodel.getPropertyIndex("username")];
+        int age = (Integer) state[metamodel.getPropertyIndex("age")];
+        Team team = (Team) state[metamodel.getPropertyIndex("team")];
+        if (team == null) {
+            return new MemberSnapshot(username, age, null, null, true);
+        }
+        //초기화 안된 프록시는 id 만 꺼내고 이름은 모른다고 표시한다(플러시 중에 select 를 하지 않기 위해)
+        if (team instanceof HibernateProxy && !Hibernate.isInitialized(team)) {
+            Long teamId = (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+            return new MemberSnapshot(username, age, teamId, null, false);
+        }
+        return new MemberSnapshot(username, age, team.getId(), team.getName(), true);
+    }
+
+    private static String teamName(EntityPersister persister, Object[] state) {
+        return (String) state[persister.getEntityMetamodel().getPropertyIndex("name")];
+    }
+}
@@ -0,0 +1,23 @@
+package com.study.querydsl.event;
+
+//MemberChangeEventListener 가 flush 시점에 호출한다.
+//플러시 도중이므로 구현체에서 같은 영속성 컨텍스트로 쿼리를 날리면 안된다.
+public interface MemberChangeHandler {
+
+    void onMemberChange(MemberChange change);
+
+    default void onTeamChange(TeamChange change) {
+    }
+
+    //Member/Team 대상 JPQL 벌크 연산을 실행하기 직전에 호출된다 (BulkWriteQueryTranslatorFactory). 어떤 행이 바뀌는지는 모른다
+    default void onBulkWrite(Class<?> entityType) {
+    }
+
+    //변경이 있던 트랜잭션의 커밋 직전(마지막 플러시가 끝난 뒤) 한번 호출된다. 여기서는 쿼리를 날려도 된다.
+    default void beforeTransactionCompletion() {
+    }
+
+    //변경이 있던 트랜잭션이 커밋/롤백된 뒤 한번 호출된다.
+    default void afterTransactionCompletion(boolean success) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.study.querydsl.event;
+
+import lombok.Getter;
+import lombok.ToString;
+
+//변경 전후 회원 한 행의 검색 대상 컬럼 값
+//팀이 초기화되지 않은 프록시면 이름을 알 수 없으므로 teamNameKnown 이 false 다.
+@Getter
+@ToString
+public class MemberSnapshot {
+
+    private final String username;
+    private final int age;
+    private final Long teamId;
+    private final String teamName;
+    private final boolean teamNameKnown;
+
+    public MemberSnapshot(String username, int age, Long teamId, String teamName, boolean teamNameKnown) {
+        this.username = username;
+        this.age = age;
+        this.teamId = teamId;
+        this.teamName = teamName;
+        this.teamNameKnown = teamNameKnown;
+    }
+}
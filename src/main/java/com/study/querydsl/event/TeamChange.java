@@ -0,0 +1,24 @@
+package com.study.querydsl.event;
+
+import lombok.Getter;
+import lombok.ToString;
+
+//팀 한 행의 변경
+//INSERT 는 oldName 이, DELETE 는 newName 이 null 이다.
+//UPDATE 인데 oldName 이 null 이면 변경 전 이름을 알 수 없는 경우다.
+@Getter
+@ToString
+public class TeamChange {
+
+    private final MemberChange.Type type;
+    private final Long teamId;
+    private final String oldName;
+    private final String newName;
+
+    public TeamChange(MemberChange.Type type, Long teamId, String oldName, String newName) {
+        this.type = type;
+        this.teamId = teamId;
+        this.oldName = oldName;
+        this.newName = newName;
+    }
+}
@@ -0,0 +1,73 @@
+package com.study.querydsl.metrics;
+
+import com.study.querydsl.dto.MemberTeamSlice;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Optional;
+
+//리파지토리 메서드별 응답시간(p50/p95/p99)과 반환 행 수를 micrometer 로 기록한다
+//MemberRepository 는 스프링 데이터 프록시와 MemberRepositoryImpl 양쪽에 걸리지 않도록 구현체에서만 잰다.
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class RepositoryMetricsAspect {
+
+    public static final String TIMER = "repository.query";
+    public static final String ROWS = "repository.query.rows";
+
+    private final MeterRegistry registry;
+
+    @Around("execution(public * com.study.querydsl.repository.MemberJpaRepository.*(..))"
+            + " || (execution(* com.study.querydsl.repository.MemberRepositoryCustom.*(..))"
+            + " && target(com.study.querydsl.repository.MemberRepositoryImpl))")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." + joinPoint.getSignature().getName();
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "error";
+        try {
+            Object result = joinPoint.proceed();
+            outcome = "success";
+            long rows = rows(result);
+            if (rows >= 0) {
+                DistributionSummary.builder(ROWS)
+                        .tag("method", method)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(registry)
+                        .record(rows);
+            }
+            return result;
+        } finally {
+            sample.stop(Timer.builder(TIMER)
+                    .tag("method", method)
+                    .tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry));
+        }
+    }
+
+    //행 수를 알 수 없는 반환값(void, 카운트 등)은 -1
+    private static long rows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof MemberTeamSlice) {
+            return ((MemberTeamSlice) result).getContent().size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,18 @@
+package com.study.querydsl.metrics;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//요청(컨트롤러 메서드) 또는 테스트 하나에서 허용하는 select 수
+//지연로딩 때문에 쿼리 한번이 1+N 으로 늘어나는 것을 잡기 위해 쓴다.
+//테스트 데이터를 넣는 insert 는 세지 않도록 select 만 센다.
+//- 컨트롤러 : SqlStatementInterceptor 가 응답을 쓴 뒤 확인해서 경고 로그를 남긴다(sql-budget.fail-on-exceed=true 면 예외)
+//- 테스트 : SqlBudgetExtension 이 테스트가 끝날때 확인해서 실패시킨다
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SqlBudget {
+
+    int value();
+}
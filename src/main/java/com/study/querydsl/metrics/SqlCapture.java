@@ -0,0 +1,68 @@
+package com.study.querydsl.metrics;
+
+import com.p6spy.engine.common.PreparedStatementInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.Getter;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//p6spy 리스너로 현재 스레드에서 실행된 SQL 을 모은다 (실행계획 확인용)
+//값을 SQL 에 채워넣지 않고 PreparedStatement 의 SQL 과 바인딩 값을 따로 둔다 (다시 실행할때도 바인딩하도록)
+@Profile("local")
+@Component
+public class SqlCapture extends SimpleJdbcEventListener {
+
+    private final ThreadLocal<List<CapturedSql>> captured = new ThreadLocal<>();
+    //실행 전까지 statement 별로 바인딩된 값 (파라미터 번호 순)
+    private final ThreadLocal<Map<StatementInformation, Map<Integer, Object>>> parameters = new ThreadLocal<>();
+
+    public List<CapturedSql> capture(Runnable runnable) {
+        captured.set(new ArrayList<>());
+        parameters.set(new IdentityHashMap<>());
+        try {
+            runnable.run();
+            return captured.get();
+        } finally {
+            captured.remove();
+            parameters.remove();
+        }
+    }
+
+    @Override
+    public void onAfterPreparedStatementSet(PreparedStatementInformation statementInformation, int parameterIndex,
+                                            Object value, SQLException e) {
+        Map<StatementInformation, Map<Integer, Object>> bound = parameters.get();
+        if (bound != null) {
+            bound.computeIfAbsent(statementInformation, s -> new TreeMap<>()).put(parameterIndex, value);
+        }
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        List<CapturedSql> sqls = captured.get();
+        if (sqls != null) {
+            Map<Integer, Object> bound = parameters.get().remove(statementInformation);
+            sqls.add(new CapturedSql(statementInformation.getSql(),
+                    bound != null ? new ArrayList<>(bound.values()) : new ArrayList<>()));
+        }
+    }
+
+    @Getter
+    public static class CapturedSql {
+        private final String sql;
+        private final List<Object> parameters;
+
+        public CapturedSql(String sql, List<Object> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.study.querydsl.metrics;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+//p6spy 리스너로 현재 스레드에서 나간 SQL 수를 센다
+//start() 부터 stop() 까지 센 값을 돌려준다. executeBatch 는 묶음 하나를 한번으로 센다.
+//겹쳐서 시작할 수 있다(테스트 전체를 세는 중에 MockMvc 요청 하나를 따로 세는 경우 등).
+//다른 스레드(병렬 카운트 쿼리 등)에서 나간 SQL 은 세지 않는다.
+@Component
+public class SqlStatementCounter extends SimpleJdbcEventListener {
+
+    private final ThreadLocal<Deque<Counts>> counts = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public void start() {
+        counts.get().push(new Counts());
+    }
+
+    public Counts stop() {
+        Deque<Counts> stack = counts.get();
+        Counts current = stack.poll();
+        if (stack.isEmpty()) {
+            counts.remove();
+        }
+        return current != null ? current : new Counts();
+    }
+
+    //stop() 하지 않고 지금까지 센 값
+    public Counts current() {
+        Counts current = counts.get().peek();
+        return current != null ? current : new Counts();
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        Deque<Counts> stack = counts.get();
+        if (stack.isEmpty()) {
+            counts.remove();
+            return;
+        }
+        boolean select = isSelect(statementInformation.getSql());
+        for (Counts current : stack) {
+            current.statements++;
+            if (select) {
+                current.selects++;
+            }
+        }
+    }
+
+    private static boolean isSelect(String sql) {
+        return sql != null && sql.trim().regionMatches(true, 0, "select", 0, 6);
+    }
+
+    public static class Counts {
+        private int statements;
+        private int selects;
+
+        public int getStatements() {
+            return statements;
+        }
+
+        public int getSelects() {
+            return selects;
+        }
+    }
+}
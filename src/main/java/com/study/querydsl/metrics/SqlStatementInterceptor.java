@@ -0,0 +1,85 @@
+package com.study.querydsl.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+//요청 하나에서 나간 SQL 수를 url 패턴별로 기록한다 (1+N 이 생기면 여기서 보인다)
+//핸들러에 @SqlBudget 이 있으면 응답 바디까지 쓴 뒤(postHandle) select 수를 확인한다.
+@Slf4j
+@Component
+public class SqlStatementInterceptor implements HandlerInterceptor {
+
+    public static final String STATEMENTS = "http.request.sql.statements";
+    public static final String BUDGET_EXCEEDED = "http.request.sql.budget.exceeded";
+
+    private final SqlStatementCounter counter;
+    private final MeterRegistry registry;
+    private final boolean failOnExceed;
+
+    public SqlStatementInterceptor(SqlStatementCounter counter, MeterRegistry registry,
+                                   @Value("${sql-budget.fail-on-exceed:false}") boolean failOnExceed) {
+        this.counter = counter;
+        this.registry = registry;
+        this.failOnExceed = failOnExceed;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        counter.start();
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        SqlBudget budget = budget(handler);
+        if (budget == null) {
+            return;
+        }
+        int selects = counter.current().getSelects();
+        if (selects <= budget.value()) {
+            return;
+        }
+        String message = String.format("SQL 예산 초과: %s %s 에서 select %d번 (허용 %d번)",
+                request.getMethod(), uri(request), selects, budget.value());
+        registry.counter(BUDGET_EXCEEDED, "uri", uri(request)).increment();
+        if (failOnExceed) {
+            throw new IllegalStateException(message);
+        }
+        log.warn(message);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        SqlStatementCounter.Counts counts = counter.stop();
+        DistributionSummary.builder(STATEMENTS)
+                .tag("uri", uri(request))
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry)
+                .record(counts.getStatements());
+    }
+
+    private static SqlBudget budget(Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return null;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        SqlBudget budget = handlerMethod.getMethodAnnotation(SqlBudget.class);
+        return budget != null ? budget : AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), SqlBudget.class);
+    }
+
+    private static String uri(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : "UNKNOWN";
+    }
+}
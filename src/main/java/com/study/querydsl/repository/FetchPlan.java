@@ -0,0 +1,9 @@
+package com.study.querydsl.repository;
+
+//엔티티 검색 시 연관관계를 어디까지 한번에 가져올지
+//NONE 으로 조회한 뒤 member.getTeam() 을 건드리면 회원마다(팀마다) select 가 한번씩 더 나간다(N+1).
+//응답에서 팀을 쓸거라면 WITH_TEAM 으로 페치조인해서 쿼리 한번으로 끝낸다.
+public enum FetchPlan {
+    NONE,
+    WITH_TEAM
+}
@@ -1,40 +1,69 @@
 package com.study.querydsl.repository;
 
+import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Predicate;
-import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.cache.MemberSearchCache;
 import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamColumns;
 import com.study.querydsl.dto.MemberTeamDto;
 import com.study.querydsl.dto.QMemberTeamDto;
 import com.study.querydsl.entity.Member;
 import com.study.querydsl.entity.QMember;
 import com.study.querydsl.entity.QTeam;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static com.study.querydsl.entity.QMember.member;
 
 import static com.study.querydsl.entity.QTeam.team;
+import static com.study.querydsl.repository.MemberSearchPredicates.conditions;
+import static com.study.querydsl.repository.MemberSearchPredicates.needsTeamJoin;
 import static org.springframework.util.StringUtils.hasText;
 import static org.springframework.util.StringUtils.isEmpty;
 
+//조회 메서드는 기본으로 읽기 전용 트랜잭션에서 돈다.
+//스프링이 하이버네이트 세션을 읽기 전용(스냅샷 없음), 플러시 MANUAL 로 두고 JDBC 커넥션도 readOnly 로 연다.
+//이미 쓰기 트랜잭션 안에서 호출되면 그 트랜잭션에 참여하고, 호출한 쪽이 엔티티를 고칠 수 있어야 하므로
+//엔티티 조회의 읽기 전용 힌트는 현재 트랜잭션이 읽기 전용일때만 준다 (readOnlyHint). DTO 조회는 영속성 컨텍스트에 올라가지 않으므로 주지 않는다.
 @Repository
+@Transactional(readOnly = true)
 public class MemberJpaRepository {
 
+    //in 절 파라미터 최대 개수 (2의 거듭제곱)
+    private static final int MAX_IN_BATCH = 512;
+
     private  final EntityManager em;
     private  final JPAQueryFactory queryFactory;
+    private  final MemberSearchTemplates searchTemplates;
+    private  final MemberSearchCache searchCache;
 
-    public MemberJpaRepository(EntityManager em) {
+    public MemberJpaRepository(EntityManager em, MemberSearchTemplates searchTemplates, MemberSearchCache searchCache) {
         this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.searchTemplates = searchTemplates;
+        this.searchCache = searchCache;
     }
 
+    @Transactional
     public void save(Member member){
         em.persist(member);
     }
@@ -42,19 +71,71 @@ public class MemberJpaRepository {
         Member findMember = em.find(Member.class, id);
         return Optional.ofNullable(findMember);
     }
+    //id 여러개를 한번에 조회 (요청한 순서대로, 없는 id 는 빠진다)
+    //id in (...) 을 MAX_IN_BATCH 개씩 나눠서 조회하고 파라미터 개수를 2의 거듭제곱으로 맞춘다(마지막 id 반복).
+    //in 절 파라미터 개수마다 하이버네이트 쿼리 플랜과 JDBC PreparedStatement 가 따로 생기므로
+    //개수를 1, 2, 4 ... 512 로만 나오게 해서 캐시를 재사용하게 한다.
+    public List<Member> findAllByIds(Collection<Long> ids){
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        distinctIds.remove(null);
+        Map<Long, Member> membersById = new HashMap<>(distinctIds.size() * 2);
+        List<Long> batch = new ArrayList<>(MAX_IN_BATCH);
+        for (Long id : distinctIds) {
+            batch.add(id);
+            if (batch.size() == MAX_IN_BATCH) {
+                fetchBatch(batch, membersById);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            fetchBatch(batch, membersById);
+        }
+
+        List<Member> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Member member = membersById.get(id);
+            if (member != null) {
+                result.add(member);
+            }
+        }
+        return result;
+    }
+
+    private void fetchBatch(List<Long> batch, Map<Long, Member> membersById) {
+        int paddedSize = Integer.highestOneBit(batch.size());
+        if (paddedSize < batch.size()) {
+            paddedSize <<= 1;
+        }
+        List<Long> padded = new ArrayList<>(paddedSize);
+        padded.addAll(batch);
+        Long last = batch.get(batch.size() - 1);
+        while (padded.size() < paddedSize) {
+            padded.add(last);
+        }
+        for (Member member : em.createQuery("select m from Member m where m.id in :ids", Member.class)
+                .setParameter("ids", padded)
+                .setHint(QueryHints.READ_ONLY, readOnlyHint())
+                .getResultList()) {
+            membersById.put(member.getId(), member);
+        }
+    }
+
     public List<Member> findAll(){
         return  em.createQuery("select m from Member m",Member.class)
+                .setHint(QueryHints.READ_ONLY, readOnlyHint())
                 .getResultList();
     }
 
     public List<Member> findAll_QueryDsl(){
         return  queryFactory
                 .selectFrom(member)
+                .setHint(QueryHints.READ_ONLY, readOnlyHint())
                 .fetch();
     }
     public List<Member> findByUsername(String username){
         return em.createQuery("select m from Member m where m.username = :username",Member.class)
                 .setParameter("username", username)
+                .setHint(QueryHints.READ_ONLY, readOnlyHint())
                 .getResultList();
 
     }
@@ -63,6 +144,7 @@ public class MemberJpaRepository {
         return queryFactory
                 .selectFrom(member)
                 .where(member.username.eq(username))
+                .setHint(QueryHints.READ_ONLY, readOnlyHint())
                 .fetch();
 
     }
@@ -72,8 +154,15 @@ public class MemberJpaRepository {
         if(hasText(condition.getUsername())){
             builder.and(member.username.eq(condition.getUsername()));
         }
+        if(hasText(condition.getUsernamePrefix())){
+            builder.and(member.username.startsWith(condition.getUsernamePrefix()));
+        }
+        if(hasText(condition.getUsernameContains())){
+            builder.and(member.username.contains(condition.getUsernameContains()));
+        }
+        //member.team.name 으로 쓰면 묵시적 조인이 하나 더 생기므로 조인한 team 별칭을 쓴다
         if(hasText(condition.getTeamName())){
-            builder.and(member.team.name.eq(condition.getTeamName()));
+            builder.and(team.name.eq(condition.getTeamName()));
         }
         if(condition.getAgeGoe() != null){
             builder.and(member.age.goe(condition.getAgeGoe()));
@@ -95,8 +184,18 @@ public class MemberJpaRepository {
                 .fetch();
     }
     //where 절 파라미터 방식의 동적쿼리
+    //매번 쿼리를 새로 조립하지 않고 조건 모양별로 미리 만들어둔 JPQL 에 값만 바인딩한다
+    //결과는 MemberSearchCache 에 두고 회원/팀이 바뀌면 영향받는 조건만 지운다(반환 리스트는 수정 불가)
     public List<MemberTeamDto> search(MemberSearchCondition condition){
-        return queryFactory
+        return searchCache.get(condition, () -> searchTemplates.search(condition));
+    }
+
+    //대용량 내보내기용
+    //결과를 List 로 모으지 않고 iterate()(하이버네이트 ScrollableResults) 커서로 한 행씩 넘겨준다.
+    //fetchSize 만큼씩 JDBC 에서 읽어오고 DTO 프로젝션이라 영속성 컨텍스트에도 쌓이지 않으므로
+    //결과가 몇 건이든 힙 사용량이 일정하다.
+    public void streamSearch(MemberSearchCondition condition, int fetchSize, Consumer<MemberTeamDto> consumer){
+        try (CloseableIterator<MemberTeamDto> iterator = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -105,48 +204,63 @@ public class MemberJpaRepository {
                         team.name.as("teamName")))
                 .from(member)
                 .leftJoin(member.team , team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
+                .where(conditions(condition))
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .iterate()) {
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+            }
+        }
     }
 
-    //프로젝션이 달라져도 메서드들을 재사용 할 수 있다.
-    public List<Member> searchMember(MemberSearchCondition condition){
-        return queryFactory
-                .selectFrom(member)
-                .leftJoin(member.team , team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
+    //DTO 없이 조회 결과 행을 그대로 넘겨준다 (열 순서 : memberId, username, age, teamId, teamName)
+    //응답에 바로 쓰는 용도라 캐시를 거치지 않는다
+    public void streamSearchRows(MemberSearchCondition condition, int fetchSize, Consumer<Object[]> rowConsumer){
+        searchTemplates.scroll(condition, fetchSize, rowConsumer);
     }
 
-    private BooleanExpression ageBetween(int ageLoe, int ageGoe){
-        return ageGoe(ageLoe).and(ageGoe(ageGoe));
+    //대용량 분석/내보내기용 컬럼형 결과 (streamSearch 와 같은 쿼리를 커서로 읽어서 컬럼 배열에 쌓는다)
+    //DTO 를 만들지 않으므로 행당 메모리가 MemberTeamDto 리스트보다 훨씬 작다.
+    public MemberTeamColumns searchColumns(MemberSearchCondition condition, int fetchSize){
+        MemberTeamColumns.Builder columns = MemberTeamColumns.builder();
+        try (CloseableIterator<Tuple> iterator = queryFactory
+                .select(member.id, member.username, member.age, team.id, team.name)
+                .from(member)
+                .leftJoin(member.team , team)
+                .where(conditions(condition))
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .iterate()) {
+            while (iterator.hasNext()) {
+                Tuple row = iterator.next();
+                columns.add(row.get(member.id), row.get(member.username), row.get(member.age),
+                        row.get(team.id), row.get(team.name));
+            }
+        }
+        return columns.build();
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ?  member.username.eq(username):null;
-    }
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null;
+    //프로젝션이 달라져도 메서드들을 재사용 할 수 있다.
+    //팀 컬럼을 조회하지 않으므로 팀 조건이 있을때만 조인한다
+    public List<Member> searchMember(MemberSearchCondition condition){
+        return searchMember(condition, FetchPlan.NONE);
     }
 
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null ;
-     }
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    //WITH_TEAM 이면 팀을 페치조인해서 getTeam() 을 써도 추가 쿼리가 없다
+    public List<Member> searchMember(MemberSearchCondition condition, FetchPlan fetchPlan){
+        JPAQuery<Member> query = queryFactory
+                .selectFrom(member)
+                .where(conditions(condition))
+                .setHint(QueryHints.READ_ONLY, readOnlyHint());
+        if (fetchPlan == FetchPlan.WITH_TEAM) {
+            query.leftJoin(member.team , team).fetchJoin();
+        } else if (needsTeamJoin(condition)) {
+            query.join(member.team , team);
+        }
+        return query.fetch();
     }
 
-
-
-
+    //쓰기 트랜잭션에 참여했으면 false (조회한 엔티티를 고치면 반영돼야 한다)
+    private static boolean readOnlyHint() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
 }
@@ -0,0 +1,174 @@
+package com.study.querydsl.repository;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.cache.MemberStatisticsCache;
+import com.study.querydsl.dto.MemberSearchCondition;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+
+import static com.study.querydsl.entity.QMember.member;
+import static org.springframework.util.StringUtils.hasText;
+
+//@QuerydslPredicate 로 받은 조건을 실행하기 전에 비용을 확인한다 (/v4/members)
+//조건은 MemberRepository.customize 가 만든 모양만 받아서 MemberSearchCondition 으로 바꾼다. 그 외 모양은 거절한다.
+//키셋 페이징은 (age, member_id) 순서라서
+//- 이름(같음/앞부분) 조건이 있으면 username 인덱스로 찾은 행을 모두 읽어서 정렬한다 -> 읽는 행 = username 인덱스 범위의 실제 건수
+//  (이름 분포는 통계가 없어서 고정 선택도로는 "m*" 같은 짧은 앞부분도 좁아 보이므로 maxScanRows + 1 번째 행이 있는지 확인한다)
+//- 아니면 (age, member_id) 인덱스를 나이 범위만큼 순서대로 읽으면서 팀/일부 검색 조건으로 거르다가 한 페이지가 차면 멈춘다
+//  -> 읽는 행 = min(나이 범위 행 수, 페이지 / (팀 선택도 x 일부 검색 선택도))
+//  (팀 조건은 조인한 뒤에 거르므로 (team_id, age) 인덱스를 쓰지 않는다. DiagnosticsController 의 /diagnostics/slice-plans 로 확인)
+//읽는 행 추정치가 maxScanRows 를 넘거나, 인덱스를 못 쓰는 일부 검색만 있으면 거절한다.
+@Component
+public class MemberPredicateGuard {
+
+    private final MemberStatisticsCache memberStatisticsCache;
+    private final JPAQueryFactory queryFactory;
+    private final int maxPageSize;
+    private final long maxScanRows;
+    @Getter
+    private final Duration timeout;
+
+    public MemberPredicateGuard(MemberStatisticsCache memberStatisticsCache, EntityManager em,
+                                @Value("${member.predicate.max-page-size:100}") int maxPageSize,
+                                @Value("${member.predicate.max-scan-rows:100000}") long maxScanRows,
+                                @Value("${member.predicate.timeout:2s}") Duration timeout) {
+        this.memberStatisticsCache = memberStatisticsCache;
+        this.queryFactory = new JPAQueryFactory(em);
+        this.maxPageSize = maxPageSize;
+        this.maxScanRows = maxScanRows;
+        this.timeout = timeout;
+    }
+
+    //거절하면 RejectedPredicateException
+    public MemberSearchCondition check(Predicate predicate, int size) {
+        checkSize(size);
+        MemberSearchCondition condition = toCondition(predicate);
+        boolean sorted = hasText(condition.getUsername()) || hasText(condition.getUsernamePrefix());
+        boolean indexed = sorted || hasText(condition.getTeamName())
+                || condition.getAgeGoe() != null || condition.getAgeLoe() != null;
+        if (hasText(condition.getUsernameContains()) && !indexed) {
+            throw new RejectedPredicateException("이름 일부 검색은 인덱스를 쓰는 다른 조건과 함께 써야 합니다");
+        }
+        if (sorted) {
+            if (exceedsUsernameRange(condition)) {
+                throw new RejectedPredicateException("조건이 너무 넓습니다. 이름 조건에 맞는 행이 " + maxScanRows + " 건을 넘습니다");
+            }
+            return condition;
+        }
+        long scanRows = estimateScanRows(condition, size);
+        if (scanRows > maxScanRows) {
+            throw new RejectedPredicateException("조건이 너무 넓습니다. 읽을 행 추정치 " + scanRows + " > " + maxScanRows);
+        }
+        return condition;
+    }
+
+    //커서 페이징(/v2, /v3 slice)도 같은 한도를 쓴다
+    public void checkSize(int size) {
+        if (size < 1 || size > maxPageSize) {
+            throw new RejectedPredicateException("size는 1 이상 " + maxPageSize + " 이하여야 합니다: " + size);
+        }
+    }
+
+    //offset 페이징(/v2, /v3)의 page x size 가 JPA 의 setFirstResult(int) 를 넘으면 거절한다
+    public void checkOffset(Pageable pageable) {
+        if (pageable.getOffset() > Integer.MAX_VALUE) {
+            throw new RejectedPredicateException("page x size 는 " + Integer.MAX_VALUE + " 이하여야 합니다: " + pageable.getOffset());
+        }
+    }
+
+    private long estimateScanRows(MemberSearchCondition condition, int size) {
+        MemberStatistics statistics = memberStatisticsCache.current();
+        MemberSearchCondition ageRange = new MemberSearchCondition();
+        ageRange.setAgeGoe(condition.getAgeGoe());
+        ageRange.setAgeLoe(condition.getAgeLoe());
+        long ageRangeRows = statistics.estimate(ageRange);
+        //없는 팀이면 나이 범위를 끝까지 읽는다
+        double selectivity = statistics.teamSelectivity(condition.getTeamName())
+                * statistics.likeSelectivity(condition.getUsernameContains());
+        if (selectivity == 0) {
+            return ageRangeRows;
+        }
+        return Math.min(ageRangeRows, (long) Math.ceil((size + 1) / selectivity));
+    }
+
+    //username 인덱스에서 이름이 같거나 앞부분이 같은 행 중 maxScanRows + 1 번째 행이 있는지만 본다
+    //(offset 으로 인덱스를 건너뛰고 한 건만 가져오므로 앞의 행들을 결과로 받지 않는다. id 는 인덱스에 있으므로 테이블은 읽지 않는다)
+    private boolean exceedsUsernameRange(MemberSearchCondition condition) {
+        BooleanExpression range = hasText(condition.getUsername())
+                ? member.username.eq(condition.getUsername())
+                : member.username.startsWith(condition.getUsernamePrefix());
+        return queryFactory
+                .select(member.id)
+                .from(member)
+                .where(range)
+                .offset(maxScanRows)
+                .fetchFirst() != null;
+    }
+
+    static MemberSearchCondition toCondition(Predicate predicate) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        if (predicate instanceof BooleanBuilder) {
+            predicate = ((BooleanBuilder) predicate).getValue();
+        }
+        if (predicate != null) {
+            collect(predicate, condition);
+        }
+        return condition;
+    }
+
+    //나이 조건이 여러개 오면 모두 만족하는 범위로 좁힌다
+    private static void collect(Expression<?> expression, MemberSearchCondition condition) {
+        if (!(expression instanceof Operation)) {
+            throw unsupported(expression);
+        }
+        Operation<?> operation = (Operation<?>) expression;
+        Operator operator = operation.getOperator();
+        if (operator == Ops.AND) {
+            for (Expression<?> arg : operation.getArgs()) {
+                collect(arg, condition);
+            }
+            return;
+        }
+        if (operation.getArgs().size() != 2 || !(operation.getArg(1) instanceof Constant)) {
+            throw unsupported(expression);
+        }
+        Expression<?> path = operation.getArg(0);
+        Object value = ((Constant<?>) operation.getArg(1)).getConstant();
+        if (path.equals(member.username) && operator == Ops.EQ) {
+            condition.setUsername((String) value);
+        } else if (path.equals(member.username) && operator == Ops.STARTS_WITH) {
+            condition.setUsernamePrefix((String) value);
+        } else if (path.equals(member.username) && operator == Ops.STRING_CONTAINS) {
+            condition.setUsernameContains((String) value);
+        } else if (path.equals(member.team.name) && operator == Ops.EQ) {
+            condition.setTeamName((String) value);
+        } else if (path.equals(member.age) && (operator == Ops.EQ || operator == Ops.GOE || operator == Ops.LOE)) {
+            int age = (Integer) value;
+            if (operator != Ops.LOE) {
+                condition.setAgeGoe(condition.getAgeGoe() == null ? age : Math.max(condition.getAgeGoe(), age));
+            }
+            if (operator != Ops.GOE) {
+                condition.setAgeLoe(condition.getAgeLoe() == null ? age : Math.min(condition.getAgeLoe(), age));
+            }
+        } else {
+            throw unsupported(expression);
+        }
+    }
+
+    private static RejectedPredicateException unsupported(Expression<?> expression) {
+        return new RejectedPredicateException("지원하지 않는 조건입니다: " + expression);
+    }
+}
@@ -1,16 +1,57 @@
 package com.study.querydsl.repository;
 
+import com.querydsl.core.types.dsl.StringPath;
 import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.QMember;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.querydsl.QuerydslPredicateExecutor;
+import org.springframework.data.querydsl.binding.QuerydslBinderCustomizer;
+import org.springframework.data.querydsl.binding.QuerydslBindings;
 import org.springframework.stereotype.Repository;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface MemberRepository extends JpaRepository<Member,Long>,MemberRepositoryCustom , QuerydslPredicateExecutor<Member> {
+public interface MemberRepository extends JpaRepository<Member,Long>,MemberRepositoryCustom , QuerydslPredicateExecutor<Member>,
+        QuerydslBinderCustomizer<QMember> {
     //메서드 이름으로 쿼리가 만들어지는 방식으로 만들어짐
     List<Member> findByUsername(String username);
 
-
+    //@QuerydslPredicate(/v4/members) 로 받을 수 있는 파라미터. 여기 없는 속성은 무시하고 비용 확인은 MemberPredicateGuard 에서 한다
+    //- username : 같음, "x*" 는 앞부분, "*x*" 는 일부 검색 ("*x" 뒷부분 검색은 인덱스를 못 쓰므로 거절)
+    //- teamName : 팀 이름 같음
+    //- age : 값이 하나면 같음, 두개(age=20&age=30)면 그 사이, 세개 이상은 거절
+    //스프링 데이터 2.2 는 한 속성에 별칭(as)을 여러개 걸면 마지막 바인딩만 남으므로 속성마다 바인딩은 하나다.
+    @Override
+    default void customize(QuerydslBindings bindings, QMember root) {
+        bindings.excludeUnlistedProperties(true);
+        bindings.including(root.username, root.age, root.team.name);
+        bindings.bind(root.username).first((path, value) -> {
+            if (value.length() > 2 && value.startsWith("*") && value.endsWith("*")) {
+                return path.contains(value.substring(1, value.length() - 1));
+            }
+            if (value.length() > 1 && value.endsWith("*")) {
+                return path.startsWith(value.substring(0, value.length() - 1));
+            }
+            if (value.length() > 1 && value.startsWith("*")) {
+                throw new RejectedPredicateException("이름 뒷부분 검색은 지원하지 않습니다");
+            }
+            return path.eq(value);
+        });
+        bindings.bind(root.team.name).as("teamName").first(StringPath::eq);
+        bindings.bind(root.age).all((path, values) -> {
+            Iterator<? extends Integer> it = values.iterator();
+            Integer from = it.next();
+            if (!it.hasNext()) {
+                return Optional.of(path.eq(from));
+            }
+            Integer to = it.next();
+            if (it.hasNext()) {
+                throw new RejectedPredicateException("age는 두개(범위)까지만 받습니다");
+            }
+            return Optional.of(path.goe(Math.min(from, to)).and(path.loe(Math.max(from, to))));
+        });
+    }
 }
@@ -2,13 +2,20 @@ package com.study.querydsl.repository;
 
 import com.study.querydsl.dto.MemberSearchCondition;
 import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.dto.MemberTeamSlice;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.time.Duration;
 import java.util.List;
 
 public interface MemberRepositoryCustom {
     List<MemberTeamDto> search(MemberSearchCondition condition);
     Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable);
     Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable);
+    Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, PagingStrategy pagingStrategy);
+    Page<MemberTeamDto> searchPageEstimated(MemberSearchCondition condition, Pageable pageable, PagingStrategy pagingStrategy);
+    MemberTeamSlice searchSlice(MemberSearchCondition condition, String cursor, int size);
+    //timeout 이 지나면 DB 에서 쿼리를 취소한다 (QueryTimeoutException)
+    MemberTeamSlice searchSlice(MemberSearchCondition condition, String cursor, int size, Duration timeout);
 }
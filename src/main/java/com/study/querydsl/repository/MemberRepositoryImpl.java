@@ -1,60 +1,87 @@
 package com.study.querydsl.repository;
 
-import com.querydsl.core.QueryResults;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.cache.MemberCountCache;
+import com.study.querydsl.cache.MemberSearchIndex;
+import com.study.querydsl.cache.MemberStatisticsCache;
+import com.study.querydsl.config.CountQueryExecutor;
+import com.study.querydsl.dto.EstimatedPage;
+import com.study.querydsl.dto.MemberCursor;
 import com.study.querydsl.dto.MemberSearchCondition;
 import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.dto.MemberTeamSlice;
 import com.study.querydsl.dto.QMemberTeamDto;
 import com.study.querydsl.entity.Member;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
 import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.study.querydsl.entity.QMember.member;
 import static com.study.querydsl.entity.QTeam.team;
-import static org.springframework.util.StringUtils.hasText;
+import static com.study.querydsl.repository.MemberSearchPredicates.conditions;
+import static com.study.querydsl.repository.MemberSearchPredicates.needsTeamJoin;
 
+//검색 전용이므로 읽기 전용 트랜잭션을 기본으로 한다(MemberJpaRepository 와 같음)
+@Transactional(readOnly = true)
 public class MemberRepositoryImpl extends QuerydslRepositorySupport implements MemberRepositoryCustom{
 
     @PersistenceContext
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberCountCache memberCountCache;
+    private final MemberSearchTemplates searchTemplates;
+    private final MemberStatisticsCache memberStatisticsCache;
+    //member.search.index.enabled=true 일때만 있다
+    private final MemberSearchIndex memberSearchIndex;
+    //member.search.parallel-count=true 일때만 있다
+    private final CountQueryExecutor countQueryExecutor;
 
-    public MemberRepositoryImpl(EntityManager em) {
+    @Autowired
+    public MemberRepositoryImpl(EntityManager em, MemberCountCache memberCountCache, MemberSearchTemplates searchTemplates,
+                                MemberStatisticsCache memberStatisticsCache, ObjectProvider<MemberSearchIndex> memberSearchIndex,
+                                ObjectProvider<CountQueryExecutor> countQueryExecutor) {
+        this(em, memberCountCache, searchTemplates, memberStatisticsCache, memberSearchIndex.getIfAvailable(),
+                countQueryExecutor.getIfAvailable());
+    }
+
+    public MemberRepositoryImpl(EntityManager em, MemberCountCache memberCountCache, MemberSearchTemplates searchTemplates,
+                                MemberStatisticsCache memberStatisticsCache, MemberSearchIndex memberSearchIndex,
+                                CountQueryExecutor countQueryExecutor) {
         super(Member.class);
         this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.memberCountCache = memberCountCache;
+        this.searchTemplates = searchTemplates;
+        this.memberStatisticsCache = memberStatisticsCache;
+        this.memberSearchIndex = memberSearchIndex;
+        this.countQueryExecutor = countQueryExecutor;
     }
 
     @Override
     //where 절 파라미터 방식의 동적쿼리
     public List<MemberTeamDto> search(MemberSearchCondition condition){
-
-        List<MemberTeamDto> result = from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .select(
-                        new QMemberTeamDto(
-                                member.id.as("memberId"),
-                                member.username,
-                                member.age,
-                                team.id.as("teamId"),
-                                team.name.as("teamName")))
-                .fetch();
         return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
@@ -64,37 +91,35 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         team.name.as("teamName")))
                 .from(member)
                 .leftJoin(member.team , team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
+                .where(conditions(condition))
+                .fetch();
+    }
+
+    //QuerydslRepositorySupport 의 from() 으로 시작하는 같은 쿼리
+    //search 와 결과가 같고 JPAQueryFactory 방식과 비교(벤치마크)용으로 남겨둔다.
+    public List<MemberTeamDto> searchByRepositorySupport(MemberSearchCondition condition){
+        return from(member)
+                .leftJoin(member.team, team)
+                .where(conditions(condition))
+                .select(
+                        new QMemberTeamDto(
+                                member.id.as("memberId"),
+                                member.username,
+                                member.age,
+                                team.id.as("teamId"),
+                                team.name.as("teamName")))
                 .fetch();
     }
+
     //spring data jpa QueryDsl을 이용한 페이징처리
+    //fetchResults() 처럼 카운트를 먼저 보고 필요할때만 컨텐츠를 조회한다.
+    //두 쿼리 모두 조건 모양별로 캐시해둔 JPQL 을 쓴다.
     @Override
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> results = queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetchResults();
-        List<MemberTeamDto> content = results.getResults();
-        long total = results.getTotal();
+        long total = searchTemplates.count(condition);
+        List<MemberTeamDto> content = total > pageable.getOffset()
+                ? searchTemplates.search(condition, pageable.getOffset(), pageable.getPageSize())
+                : Collections.emptyList();
         return new PageImpl<>(content,pageable,total);
     }
 
@@ -104,12 +129,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 
         JPQLQuery<MemberTeamDto> jpaQuery = from(member)
                 .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
+                .where(conditions(condition))
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -120,10 +140,8 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 
         JPQLQuery<MemberTeamDto> query = getQuerydsl().applyPagination(pageable, jpaQuery);
 
-        query.fetch();
-
-//        List<MemberTeamDto> content = results.getResults();
-//        long total = results.getTotal();
+        List<MemberTeamDto> content = query.fetch();
+        long total = jpaQuery.fetchCount();
         return new PageImpl<>(content,pageable,total);
     }
 
@@ -135,7 +153,104 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
     //위의 상황과 같이 최적화를 할 수 있을때 카운트 쿼리와 , 컨텐츠쿼리를 분리하는 것이 좋다.
     @Override
     public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> content = queryFactory
+        return searchPageComplex(condition, pageable, PagingStrategy.OFFSET);
+    }
+
+    //컨텐츠는 member.id 순으로 정렬해서 페이지 경계가 매번 같도록 한다
+    @Override
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, PagingStrategy pagingStrategy) {
+        //메모리 인덱스가 있으면 건수와 페이지 id 를 인덱스에서 구하고 그 페이지만 DB 에서 채운다 (쿼리 1번)
+        MemberSearchIndex.Result indexed = memberSearchIndex != null
+                ? memberSearchIndex.search(condition, pageable.getOffset(), pageable.getPageSize())
+                : null;
+        if (indexed != null) {
+            return new PageImpl<>(fetchByIds(indexed.getMemberIds()), pageable, indexed.getTotal());
+        }
+        if (canCountInParallel()) {
+            return searchPageComplexParallel(condition, pageable, pagingStrategy);
+        }
+        List<MemberTeamDto> content = content(condition, pageable, pagingStrategy);
+
+        //카운트는 조건별로 캐시하고 member, team 에 쓰기가 있으면 MemberTableWriteListener 가 비운다
+        return PageableExecutionUtils.getPage(content,pageable,
+                () -> memberCountCache.get(condition, () -> countQuery(condition).fetchCount()));
+       // return new PageImpl<>(content,pageable,total);
+    }
+
+    //"약 N 건" 만 보여주면 되는 화면용 - 카운트 쿼리 대신 MemberStatistics 로 추정한다
+    //PageableExecutionUtils 처럼 컨텐츠만으로 전체 건수를 알 수 있는 페이지(덜 찬 마지막 페이지)는 정확한 값을 준다.
+    //추정값이 이미 읽은 건수보다 작으면 읽은 건수로 올리고, 페이지가 꽉 찼으면 다음 페이지가 있도록 1 을 더한다.
+    @Override
+    public Page<MemberTeamDto> searchPageEstimated(MemberSearchCondition condition, Pageable pageable, PagingStrategy pagingStrategy) {
+        List<MemberTeamDto> content = content(condition, pageable, pagingStrategy);
+        long read = pageable.getOffset() + content.size();
+        if (content.size() < pageable.getPageSize() && (pageable.getOffset() == 0 || !content.isEmpty())) {
+            return new EstimatedPage<>(content, pageable, read, false);
+        }
+        long minimum = content.size() == pageable.getPageSize() ? read + 1 : read;
+        long estimate = Math.max(memberStatisticsCache.estimate(condition), minimum);
+        return new EstimatedPage<>(content, pageable, estimate, true);
+    }
+
+    //카운트 쿼리를 다른 스레드(다른 커넥션, 읽기 전용 트랜잭션)에서 먼저 시작해두고 컨텐츠를 조회한다
+    //페이지 응답시간이 컨텐츠 + 카운트 에서 max(컨텐츠, 카운트) 가 된다.
+    //첫 페이지가 덜 찼을때처럼 PageableExecutionUtils 가 카운트를 쓰지 않으면 취소한다.
+    private Page<MemberTeamDto> searchPageComplexParallel(MemberSearchCondition condition, Pageable pageable,
+                                                          PagingStrategy pagingStrategy) {
+        Long cachedTotal = memberCountCache.getIfPresent(condition);
+        if (cachedTotal != null) {
+            return PageableExecutionUtils.getPage(content(condition, pageable, pagingStrategy), pageable, () -> cachedTotal);
+        }
+
+        Future<Long> total = countQueryExecutor.submit(
+                () -> memberCountCache.get(condition, () -> countQuery(condition).fetchCount()));
+        AtomicBoolean countUsed = new AtomicBoolean();
+        try {
+            List<MemberTeamDto> content = content(condition, pageable, pagingStrategy);
+            return PageableExecutionUtils.getPage(content, pageable, () -> {
+                countUsed.set(true);
+                return await(total);
+            });
+        } finally {
+            //실행중인 JDBC 호출을 인터럽트하지 않도록 false 로 취소한다(시작 전이면 실행되지 않는다)
+            if (!countUsed.get()) {
+                total.cancel(false);
+            }
+        }
+    }
+
+    //다른 트랜잭션에서 센 카운트는 현재 트랜잭션의 커밋 안된 쓰기를 보지 못하므로
+    //쓰기 가능한 트랜잭션 안에서는 순차로 실행한다
+    //커넥션이 넉넉하지 않으면 카운트 스레드가 커넥션을 기다리다 막힐 수 있으므로 순차로 실행한다 (CountQueryExecutor 참고)
+    private boolean canCountInParallel() {
+        return countQueryExecutor != null
+                && (!TransactionSynchronizationManager.isActualTransactionActive()
+                    || TransactionSynchronizationManager.isCurrentTransactionReadOnly())
+                && countQueryExecutor.hasSpareConnections();
+    }
+
+    private static long await(Future<Long> total) {
+        try {
+            return total.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("카운트 쿼리를 기다리다 인터럽트 되었습니다", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private List<MemberTeamDto> content(MemberSearchCondition condition, Pageable pageable, PagingStrategy pagingStrategy) {
+        return pagingStrategy == PagingStrategy.DEFERRED_JOIN
+                ? deferredJoinContent(condition, pageable)
+                : offsetContent(condition, pageable);
+    }
+
+    private List<MemberTeamDto> offsetContent(MemberSearchCondition condition, Pageable pageable) {
+        return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -144,43 +259,135 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         team.name.as("teamName")))
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
+                .where(conditions(condition))
+                .orderBy(member.id.asc())
                 .offset(pageable.getOffset())
                 .limit(pageable.getPageSize())
                 .fetch();
+    }
 
-        JPAQuery<Member> countQuery = queryFactory
-                .select(member)
+    //1단계 : 페이지에 해당하는 id 만 조회 (팀 조건이 없으면 team 조인도 하지 않는다)
+    //2단계 : id in (...) 으로 한 페이지만 팀과 조인해서 채우고 1단계 순서대로 다시 나열한다
+    private List<MemberTeamDto> deferredJoinContent(MemberSearchCondition condition, Pageable pageable) {
+        JPAQuery<Long> idQuery = queryFactory
+                .select(member.id)
+                .from(member)
+                .where(conditions(condition))
+                .orderBy(member.id.asc())
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize());
+        if (needsTeamJoin(condition)) {
+            idQuery.join(member.team, team);
+        }
+        return fetchByIds(idQuery.fetch());
+    }
+
+    //id 들만 팀과 조인해서 채우고 ids 순서대로 다시 나열한다
+    private List<MemberTeamDto> fetchByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<MemberTeamDto> rows = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                );
+                .where(member.id.in(ids))
+                .fetch();
+        Map<Long, MemberTeamDto> rowsById = new HashMap<>(rows.size() * 2);
+        for (MemberTeamDto row : rows) {
+            rowsById.put(row.getMemberId(), row);
+        }
+        List<MemberTeamDto> content = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            MemberTeamDto row = rowsById.get(id);
+            //id 를 구한 뒤에 지워진 회원은 빠진다
+            if (row != null) {
+                content.add(row);
+            }
+        }
+        return content;
+    }
 
+    //카운트 쿼리는 팀 컬럼이 필요없으므로 팀 조건이 없으면 member 단일 테이블만 센다
+    private JPAQuery<Member> countQuery(MemberSearchCondition condition) {
+        JPAQuery<Member> countQuery = queryFactory
+                .select(member)
+                .from(member)
+                .where(conditions(condition));
+        if (needsTeamJoin(condition)) {
+            countQuery.join(member.team, team);
+        }
+        return countQuery;
+    }
 
-        return PageableExecutionUtils.getPage(content,pageable, countQuery::fetchCount);
-       // return new PageImpl<>(content,pageable,total);
+    //키셋(seek) 페이징
+    //offset은 앞의 행을 모두 읽고 버리기 때문에 뒤로 갈수록 느려진다.
+    //마지막 행의 (age, member_id) 다음부터 읽으면 몇번째 페이지든 비용이 같다.
+    //size+1 건을 조회해서 다음 페이지 여부를 판단하므로 카운트 쿼리가 필요없다.
+    @Override
+    public MemberTeamSlice searchSlice(MemberSearchCondition condition, String cursor, int size) {
+        return searchSlice(condition, cursor, size, null);
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ?  member.username.eq(username):null;
+    @Override
+    public MemberTeamSlice searchSlice(MemberSearchCondition condition, String cursor, int size, Duration timeout) {
+        if (size < 1) {
+            throw new RejectedPredicateException("size는 1 이상이어야 합니다: " + size);
+        }
+        JPAQuery<MemberTeamDto> query = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(conditions(condition))
+                .where(after(decodeCursor(cursor)))
+                .orderBy(member.age.asc(), member.id.asc())
+                .limit(size + 1L);
+        if (timeout != null) {
+            query.setHint(QueryHints.TIMEOUT_HIBERNATE, timeoutSeconds(timeout));
+        }
+        List<MemberTeamDto> content = query.fetch();
+
+        boolean hasNext = content.size() > size;
+        if (hasNext) {
+            content = content.subList(0, size);
+        }
+        return new MemberTeamSlice(content, hasNext);
     }
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null;
+
+    //Statement.setQueryTimeout 은 초 단위이고 0 은 제한 없음이므로 1초 미만도 1초로 올린다
+    static int timeoutSeconds(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout은 0보다 커야 합니다: " + timeout);
+        }
+        long seconds = timeout.getSeconds() + (timeout.getNano() > 0 ? 1 : 0);
+        return (int) Math.min(Integer.MAX_VALUE, seconds);
     }
 
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null ;
+    private static MemberCursor decodeCursor(String cursor) {
+        try {
+            return MemberCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new RejectedPredicateException("잘못된 커서입니다", e);
+        }
     }
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
+
+    private BooleanExpression after(MemberCursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        //age >= a 를 바깥에 두어야 (age, member_id) 인덱스를 a 부터 범위로 읽는다 (or 만 있으면 인덱스 처음부터 읽는다)
+        return member.age.goe(cursor.getAge())
+                .and(member.age.gt(cursor.getAge()).or(member.id.gt(cursor.getMemberId())));
     }
 }
@@ -0,0 +1,62 @@
+package com.study.querydsl.repository;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.study.querydsl.dto.MemberSearchCondition;
+
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
+import static org.springframework.util.StringUtils.hasText;
+
+//MemberJpaRepository, MemberRepositoryImpl 가 같이 쓰는 where 절 조건
+//팀 조건은 team 별칭(member.team 을 조인한 것)을 기준으로 만든다.
+public final class MemberSearchPredicates {
+
+    private MemberSearchPredicates() {
+    }
+
+    public static Predicate[] conditions(MemberSearchCondition condition) {
+        return new Predicate[]{
+                usernameEq(condition.getUsername()),
+                usernameStartsWith(condition.getUsernamePrefix()),
+                usernameContains(condition.getUsernameContains()),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        };
+    }
+
+    //팀 컬럼을 조회하지 않는 쿼리(카운트, 엔티티 조회)는 팀 조건이 있을때만 조인하면 된다.
+    //member.team 은 ManyToOne 이라 left join 을 빼도 결과 건수가 달라지지 않는다.
+    //팀 이름 조건이 있으면 팀 없는 회원은 빠지므로 inner join 으로 해서 DB 가 team 인덱스부터 읽을 수 있게 한다.
+    public static boolean needsTeamJoin(MemberSearchCondition condition) {
+        return hasText(condition.getTeamName());
+    }
+
+    public static BooleanExpression usernameEq(String username) {
+        return hasText(username) ? member.username.eq(username) : null;
+    }
+
+    //like 'x%' 라서 idx_member_username 범위 검색이 된다
+    public static BooleanExpression usernameStartsWith(String prefix) {
+        return hasText(prefix) ? member.username.startsWith(prefix) : null;
+    }
+
+    //like '%x%' 는 DB 인덱스를 못 타서 member 를 풀스캔한다
+    //MemberSearchIndex 가 있으면 searchPageComplex 는 trigram 으로 후보를 줄여서 메모리에서 푼다
+    public static BooleanExpression usernameContains(String text) {
+        return hasText(text) ? member.username.contains(text) : null;
+    }
+
+    public static BooleanExpression teamNameEq(String teamName) {
+        return hasText(teamName) ? team.name.eq(teamName) : null;
+    }
+
+    public static BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    }
+
+    public static BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    }
+}
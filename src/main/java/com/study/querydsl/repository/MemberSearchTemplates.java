@@ -0,0 +1,215 @@
+package com.study.querydsl.repository;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAUtil;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.dto.QMemberTeamDto;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
+import static org.springframework.util.StringUtils.hasText;
+
+//검색조건 모양별 JPQL 캐시
+//MemberSearchCondition 은 6개 필드의 유무 조합(64가지)만큼의 쿼리 모양밖에 없다.
+//모양마다 값 자리를 Param 으로 둔 쿼리를 한번만 만들어 JPQL 문자열로 직렬화해두고
+//호출할때는 파라미터 값만 바인딩한다. 같은 JPQL 문자열이면 하이버네이트도 쿼리 플랜 캐시를 재사용한다.
+@Component
+public class MemberSearchTemplates {
+
+    private static final int USERNAME = 1;
+    private static final int TEAM_NAME = 1 << 1;
+    private static final int AGE_GOE = 1 << 2;
+    private static final int AGE_LOE = 1 << 3;
+    private static final int USERNAME_PREFIX = 1 << 4;
+    private static final int USERNAME_CONTAINS = 1 << 5;
+    private static final int SHAPES = 1 << 6;
+    //querydsl 의 startsWith/contains 는 상수일때만 %, _ 를 이스케이프하므로 like 를 직접 쓰고 값을 이스케이프해서 넣는다
+    private static final char LIKE_ESCAPE = '!';
+
+    private static final Param<String> usernameParam = new Param<>(String.class, "username");
+    private static final Param<String> usernamePrefixParam = new Param<>(String.class, "usernamePrefix");
+    private static final Param<String> usernameContainsParam = new Param<>(String.class, "usernameContains");
+    private static final Param<String> teamNameParam = new Param<>(String.class, "teamName");
+    private static final Param<Integer> ageGoeParam = new Param<>(Integer.class, "ageGoe");
+    private static final Param<Integer> ageLoeParam = new Param<>(Integer.class, "ageLoe");
+
+    private static final QMemberTeamDto projection = new QMemberTeamDto(
+            member.id.as("memberId"),
+            member.username,
+            member.age,
+            team.id.as("teamId"),
+            team.name.as("teamName"));
+
+    private final EntityManager em;
+    private final AtomicReferenceArray<Template> contentTemplates = new AtomicReferenceArray<>(SHAPES);
+    private final AtomicReferenceArray<Template> countTemplates = new AtomicReferenceArray<>(SHAPES);
+    private volatile JPQLTemplates jpqlTemplates;
+
+    public MemberSearchTemplates(EntityManager em) {
+        this.em = em;
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return fetch(condition, -1, -1);
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition, long offset, int limit) {
+        return fetch(condition, offset, limit);
+    }
+
+    //DTO 를 만들지 않고 JPQL 결과 행(Object[] : memberId, username, age, teamId, teamName)을 커서로 넘겨준다.
+    //하이버네이트가 행마다 새 배열을 주지만 넘겨받은 쪽에서 바로 쓰고 버리는 용도다.
+    public void scroll(MemberSearchCondition condition, int fetchSize, Consumer<Object[]> rowConsumer) {
+        org.hibernate.query.Query<?> query = contentTemplate(shape(condition))
+                .createQuery(em, condition)
+                .unwrap(org.hibernate.query.Query.class);
+        query.setFetchSize(fetchSize);
+        try (ScrollableResults rows = query.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                rowConsumer.accept(rows.get());
+            }
+        }
+    }
+
+    public long count(MemberSearchCondition condition) {
+        int shape = shape(condition);
+        Template template = countTemplates.get(shape);
+        if (template == null) {
+            template = build(shape, true);
+            countTemplates.set(shape, template);
+        }
+        return (Long) template.createQuery(em, condition).getSingleResult();
+    }
+
+    private List<MemberTeamDto> fetch(MemberSearchCondition condition, long offset, int limit) {
+        Query query = contentTemplate(shape(condition)).createQuery(em, condition);
+        if (offset >= 0) {
+            //setFirstResult 는 int 라서 그대로 자르면 음수나 엉뚱한 offset 이 된다 (컨트롤러에서 먼저 400 으로 거절한다)
+            query.setFirstResult(Math.toIntExact(offset));
+            query.setMaxResults(limit);
+        }
+        List<?> rows = query.getResultList();
+        List<MemberTeamDto> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            result.add(projection.newInstance((Object[]) row));
+        }
+        return result;
+    }
+
+    private Template contentTemplate(int shape) {
+        Template template = contentTemplates.get(shape);
+        if (template == null) {
+            template = build(shape, false);
+            contentTemplates.set(shape, template);
+        }
+        return template;
+    }
+
+    private static int shape(MemberSearchCondition condition) {
+        int shape = 0;
+        if (hasText(condition.getUsername())) shape |= USERNAME;
+        if (hasText(condition.getUsernamePrefix())) shape |= USERNAME_PREFIX;
+        if (hasText(condition.getUsernameContains())) shape |= USERNAME_CONTAINS;
+        if (hasText(condition.getTeamName())) shape |= TEAM_NAME;
+        if (condition.getAgeGoe() != null) shape |= AGE_GOE;
+        if (condition.getAgeLoe() != null) shape |= AGE_LOE;
+        return shape;
+    }
+
+    //모양이 같으면 같은 JPQL 이 나오므로 동시에 만들어져도 어느 쪽을 써도 상관없다
+    private Template build(int shape, boolean forCount) {
+        JPAQuery<?> query = forCount
+                ? new JPAQuery<Void>().from(member)
+                : new JPAQuery<Void>().select(projection).from(member);
+        //팀 이름 조건이 있으면 팀 없는 회원은 어차피 빠지므로 inner join 으로 한다.
+        //left join 이면 H2 가 member 부터 풀스캔하지만 inner join 이면 team(idx_team_name) 부터 읽고
+        //member 는 (team_id, age) 인덱스로 찾는다. 카운트는 팀 조건이 있을때만 조인한다
+        if ((shape & TEAM_NAME) != 0) {
+            query.join(member.team, team);
+        } else if (!forCount) {
+            query.leftJoin(member.team, team);
+        }
+        if ((shape & USERNAME) != 0) query.where(member.username.eq(usernameParam));
+        if ((shape & USERNAME_PREFIX) != 0) query.where(like(usernamePrefixParam));
+        if ((shape & USERNAME_CONTAINS) != 0) query.where(like(usernameContainsParam));
+        if ((shape & TEAM_NAME) != 0) query.where(team.name.eq(teamNameParam));
+        if ((shape & AGE_GOE) != 0) query.where(member.age.goe(ageGoeParam));
+        if ((shape & AGE_LOE) != 0) query.where(member.age.loe(ageLoeParam));
+
+        QueryMetadata metadata = query.getMetadata();
+        JPQLSerializer serializer = new JPQLSerializer(jpqlTemplates(), em);
+        serializer.serialize(metadata, forCount, null);
+        return new Template(serializer.toString(), new HashMap<>(serializer.getConstantToLabel()));
+    }
+
+    private static BooleanExpression like(Param<String> pattern) {
+        return Expressions.booleanTemplate("{0} like {1} escape '" + LIKE_ESCAPE + "'", member.username, pattern);
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private JPQLTemplates jpqlTemplates() {
+        if (jpqlTemplates == null) {
+            jpqlTemplates = JPAProvider.getTemplates(em);
+        }
+        return jpqlTemplates;
+    }
+
+    private static class Template {
+        private final String jpql;
+        private final Map<Object, String> constants;
+
+        private Template(String jpql, Map<Object, String> constants) {
+            this.jpql = jpql;
+            this.constants = Collections.unmodifiableMap(constants);
+        }
+
+        private Query createQuery(EntityManager em, MemberSearchCondition condition) {
+            Map<ParamExpression<?>, Object> params = new HashMap<>();
+            params.put(usernameParam, condition.getUsername());
+            params.put(usernamePrefixParam, hasText(condition.getUsernamePrefix())
+                    ? escapeLike(condition.getUsernamePrefix()) + "%" : null);
+            params.put(usernameContainsParam, hasText(condition.getUsernameContains())
+                    ? "%" + escapeLike(condition.getUsernameContains()) + "%" : null);
+            params.put(teamNameParam, condition.getTeamName());
+            params.put(ageGoeParam, condition.getAgeGoe());
+            params.put(ageLoeParam, condition.getAgeLoe());
+
+            Query query = em.createQuery(jpql);
+            JPAUtil.setConstants(query, constants, params);
+            return query;
+        }
+    }
+}
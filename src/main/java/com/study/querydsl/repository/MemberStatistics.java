@@ -0,0 +1,114 @@
+package com.study.querydsl.repository;
+
+import com.study.querydsl.dto.MemberSearchCondition;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.StringUtils.hasText;
+
+//검색 결과 건수 추정용 통계 (모으는 시점의 값 그대로, 바뀌지 않는다)
+//- age : 등깊이(equi-depth) 히스토그램. 구간마다 회원 수가 비슷하도록 나누고 구간 안에서는 나이가 고르게 퍼져있다고 본다
+//- teamName : 팀 이름별 회원 수 (TeamStats)
+//- username : 서로 다른 이름 수(NDV). 이름 하나에 회원이 고르게 1/NDV 씩 있다고 본다
+//- usernamePrefix/usernameContains : 통계가 없으므로 고정 선택도(LIKE_SELECTIVITY)로 본다
+//조건끼리는 서로 독립이라고 보고 선택도를 곱한다.
+@Getter
+public class MemberStatistics {
+
+    //PostgreSQL 이 통계 없는 like 에 쓰는 기본 선택도(DEFAULT_MATCH_SEL)와 같다
+    static final double LIKE_SELECTIVITY = 0.005;
+
+    private final long total;
+    private final long usernameNdv;
+    private final Map<String, Long> teamCounts;
+    //구간 i 는 [ageLows[i], ageHighs[i]] 이고 ageCounts[i] 명이 있다
+    private final int[] ageLows;
+    private final int[] ageHighs;
+    private final long[] ageCounts;
+
+    //ageFrequencies 는 나이 오름차순 (나이, 회원 수)
+    public MemberStatistics(long total, long usernameNdv, Map<String, Long> teamCounts,
+                            List<long[]> ageFrequencies, int ageBuckets) {
+        if (ageBuckets < 1) {
+            throw new IllegalArgumentException("ageBuckets는 1 이상이어야 합니다: " + ageBuckets);
+        }
+        this.total = total;
+        this.usernameNdv = usernameNdv;
+        this.teamCounts = Collections.unmodifiableMap(new HashMap<>(teamCounts));
+
+        int[] lows = new int[ageBuckets];
+        int[] highs = new int[ageBuckets];
+        long[] counts = new long[ageBuckets];
+        long histogramTotal = 0;
+        for (long[] frequency : ageFrequencies) {
+            histogramTotal += frequency[1];
+        }
+        //한 나이에 회원이 몰려있으면 그 나이 하나가 구간 하나를 넘칠 수 있어서 구간 수가 줄어든다
+        long depth = Math.max(1, (histogramTotal + ageBuckets - 1) / ageBuckets);
+        int buckets = 0;
+        for (long[] frequency : ageFrequencies) {
+            int age = (int) frequency[0];
+            if (buckets == 0 || counts[buckets - 1] >= depth) {
+                lows[buckets] = age;
+                buckets++;
+            }
+            highs[buckets - 1] = age;
+            counts[buckets - 1] += frequency[1];
+        }
+        this.ageLows = Arrays.copyOf(lows, buckets);
+        this.ageHighs = Arrays.copyOf(highs, buckets);
+        this.ageCounts = Arrays.copyOf(counts, buckets);
+    }
+
+    public long estimate(MemberSearchCondition condition) {
+        double estimate = total
+                * usernameSelectivity(condition.getUsername())
+                * likeSelectivity(condition.getUsernamePrefix())
+                * likeSelectivity(condition.getUsernameContains())
+                * teamSelectivity(condition.getTeamName())
+                * ageSelectivity(condition.getAgeGoe(), condition.getAgeLoe());
+        return Math.round(estimate);
+    }
+
+    double usernameSelectivity(String username) {
+        if (!hasText(username)) {
+            return 1;
+        }
+        return usernameNdv == 0 ? 0 : 1.0 / usernameNdv;
+    }
+
+    double likeSelectivity(String pattern) {
+        return hasText(pattern) ? LIKE_SELECTIVITY : 1;
+    }
+
+    double teamSelectivity(String teamName) {
+        if (!hasText(teamName)) {
+            return 1;
+        }
+        return total == 0 ? 0 : (double) teamCounts.getOrDefault(teamName, 0L) / total;
+    }
+
+    double ageSelectivity(Integer ageGoe, Integer ageLoe) {
+        if (ageGoe == null && ageLoe == null) {
+            return 1;
+        }
+        long from = ageGoe != null ? ageGoe : Long.MIN_VALUE;
+        long to = ageLoe != null ? ageLoe : Long.MAX_VALUE;
+        double matched = 0;
+        long histogramTotal = 0;
+        for (int i = 0; i < ageCounts.length; i++) {
+            histogramTotal += ageCounts[i];
+            long low = Math.max(from, ageLows[i]);
+            long high = Math.min(to, ageHighs[i]);
+            if (low <= high) {
+                matched += ageCounts[i] * (double) (high - low + 1) / (ageHighs[i] - ageLows[i] + 1);
+            }
+        }
+        return histogramTotal == 0 ? 0 : matched / histogramTotal;
+    }
+}
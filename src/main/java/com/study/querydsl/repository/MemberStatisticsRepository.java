@@ -0,0 +1,60 @@
+package com.study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
+import static com.study.querydsl.entity.QTeamStats.teamStats;
+
+//MemberStatistics 를 모으는 집계 쿼리 3개
+//나이별 회원 수는 idx_member_age_id 만 읽고, 팀별 회원 수는 member 대신 TeamStats 를 읽는다.
+@Repository
+@Transactional(readOnly = true)
+public class MemberStatisticsRepository {
+
+    private final JPAQueryFactory queryFactory;
+
+    public MemberStatisticsRepository(EntityManager em) {
+        this.queryFactory = new JPAQueryFactory(em);
+    }
+
+    public MemberStatistics collect(int ageBuckets) {
+        Tuple totals = queryFactory
+                .select(member.count(), member.username.countDistinct())
+                .from(member)
+                .fetchOne();
+
+        List<long[]> ageFrequencies = new ArrayList<>();
+        for (Tuple row : queryFactory
+                .select(member.age, member.count())
+                .from(member)
+                .groupBy(member.age)
+                .orderBy(member.age.asc())
+                .fetch()) {
+            ageFrequencies.add(new long[]{row.get(member.age), row.get(member.count())});
+        }
+
+        //팀 이름은 유일하지 않으므로 이름별로 더한다
+        Map<String, Long> teamCounts = new HashMap<>();
+        for (Tuple row : queryFactory
+                .select(team.name, teamStats.memberCount.sum())
+                .from(teamStats)
+                .join(team).on(team.id.eq(teamStats.teamId))
+                .groupBy(team.name)
+                .fetch()) {
+            teamCounts.put(row.get(team.name), row.get(teamStats.memberCount.sum()));
+        }
+
+        return new MemberStatistics(totals.get(member.count()), totals.get(member.username.countDistinct()),
+                teamCounts, ageFrequencies, ageBuckets);
+    }
+}
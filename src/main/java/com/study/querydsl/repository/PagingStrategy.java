@@ -0,0 +1,10 @@
+package com.study.querydsl.repository;
+
+//페이징 컨텐츠 조회 방식
+//OFFSET : 조인한 전체 컬럼을 정렬/offset 까지 끌고 간다.
+//DEFERRED_JOIN : member.id 만 먼저 정렬/offset 해서(좁은 인덱스만 읽는다) 한 페이지의 id 를 구하고
+//                그 id 들만 id in (...) 으로 팀과 조인해서 채운 뒤 원래 순서로 되돌린다. offset 이 클수록 유리하다.
+public enum PagingStrategy {
+    OFFSET,
+    DEFERRED_JOIN
+}
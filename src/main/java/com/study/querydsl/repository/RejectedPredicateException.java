@@ -0,0 +1,14 @@
+package com.study.querydsl.repository;
+
+//클라이언트가 보낸 조건/커서/페이지 크기를 실행하지 않고 거절할때 던진다
+//메시지는 그대로 응답에 나가므로(MemberController 에서 400) 내부 정보를 넣지 않는다
+public class RejectedPredicateException extends IllegalArgumentException {
+
+    public RejectedPredicateException(String message) {
+        super(message);
+    }
+
+    public RejectedPredicateException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,110 @@
+package com.study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.dto.QTeamStatsDto;
+import com.study.querydsl.dto.TeamStatsDto;
+import com.study.querydsl.entity.Team;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.util.List;
+
+import static com.study.querydsl.entity.QTeam.team;
+import static com.study.querydsl.entity.QTeamStats.teamStats;
+
+//TeamStats 조회와 갱신 쿼리
+//갱신은 TeamStatsMaintainer 가 커밋 직전(플러시가 끝난 뒤)에 부르므로 엔티티를 고치지 않고 벌크 쿼리로만 바꾼다.
+@Repository
+public class TeamStatsRepository {
+
+    private static final String INSERT_SELECT =
+            "insert into TeamStats (teamId, memberCount, ageSum, minAge, maxAge)"
+                    + " select t.id, count(m), coalesce(sum(m.age), 0L), min(m.age), max(m.age)"
+                    + " from Team t left join t.members m";
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+
+    public TeamStatsRepository(EntityManager em) {
+        this.em = em;
+        this.queryFactory = new JPAQueryFactory(em);
+    }
+
+    //팀 수만큼만 읽는다
+    @Transactional(readOnly = true)
+    public List<TeamStatsDto> findAll() {
+        return queryFactory
+                .select(new QTeamStatsDto(
+                        teamStats.teamId,
+                        team.name,
+                        teamStats.memberCount,
+                        teamStats.ageSum,
+                        teamStats.minAge,
+                        teamStats.maxAge))
+                .from(teamStats)
+                .join(team).on(team.id.eq(teamStats.teamId))
+                .orderBy(team.name.asc(), teamStats.teamId.asc())
+                .fetch();
+    }
+
+    //회원 수/나이 합 증감과 새로 들어온 나이의 최소/최대만 반영한다. 행이 없으면 0
+    public int add(Long teamId, long countDelta, long ageSumDelta, int addedMin, int addedMax) {
+        return em.createQuery("update TeamStats s set"
+                + " s.memberCount = s.memberCount + :countDelta,"
+                + " s.ageSum = s.ageSum + :ageSumDelta,"
+                + " s.minAge = case when s.minAge is null or s.minAge > :addedMin then :addedMin else s.minAge end,"
+                + " s.maxAge = case when s.maxAge is null or s.maxAge < :addedMax then :addedMax else s.maxAge end"
+                + " where s.teamId = :teamId")
+                .setParameter("countDelta", countDelta)
+                .setParameter("ageSumDelta", ageSumDelta)
+                .setParameter("addedMin", addedMin)
+                .setParameter("addedMax", addedMax)
+                .setParameter("teamId", teamId)
+                .executeUpdate();
+    }
+
+    //빠진 회원이 있으면 최소/최대를 알 수 없으므로 (team_id, age) 인덱스로 다시 구한다. 행이 없으면 0
+    public int remove(Long teamId, long countDelta, long ageSumDelta) {
+        return em.createQuery("update TeamStats s set"
+                + " s.memberCount = s.memberCount + :countDelta,"
+                + " s.ageSum = s.ageSum + :ageSumDelta,"
+                + " s.minAge = (select min(m.age) from Member m where m.team.id = :teamId),"
+                + " s.maxAge = (select max(m.age) from Member m where m.team.id = :teamId)"
+                + " where s.teamId = :teamId")
+                .setParameter("countDelta", countDelta)
+                .setParameter("ageSumDelta", ageSumDelta)
+                .setParameter("teamId", teamId)
+                .executeUpdate();
+    }
+
+    //커밋할때까지 팀 행을 잠근다 (select ... for update). 같은 팀의 TeamStats 행을 만드는 트랜잭션을 하나씩 줄세운다
+    public void lockTeam(Long teamId) {
+        em.find(Team.class, teamId, LockModeType.PESSIMISTIC_WRITE);
+    }
+
+    //팀 하나를 member 에서 다시 집계한다
+    public void refresh(Long teamId) {
+        delete(teamId);
+        em.createQuery(INSERT_SELECT + " where t.id = :teamId group by t.id")
+                .setParameter("teamId", teamId)
+                .executeUpdate();
+    }
+
+    public void delete(Long teamId) {
+        em.createQuery("delete from TeamStats s where s.teamId = :teamId")
+                .setParameter("teamId", teamId)
+                .executeUpdate();
+    }
+
+    //벌크 연산처럼 무엇이 바뀌었는지 모를때 전체를 다시 만든다
+    public void rebuild() {
+        em.createQuery("delete from TeamStats").executeUpdate();
+        em.createQuery(INSERT_SELECT + " group by t.id").executeUpdate();
+    }
+
+    public void flush() {
+        em.flush();
+    }
+}
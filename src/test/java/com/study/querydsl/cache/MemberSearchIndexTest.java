@@ -0,0 +1,296 @@
+package com.study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.dto.QMemberTeamDto;
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import com.study.querydsl.metrics.SqlStatementCounter;
+import com.study.querydsl.repository.MemberRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
+import static com.study.querydsl.entity.QTeamStats.teamStats;
+import static com.study.querydsl.repository.MemberSearchPredicates.conditions;
+import static org.assertj.core.api.Assertions.assertThat;
+
+//인덱스는 커밋된 변경만 반영하므로 커밋된 데이터로 테스트하고 끝나면 지운다
+//매번 같은 조건을 DB 에서 id 순으로 조회한 결과와 비교한다 (인덱스가 비워졌으면 다 읽을때까지 기다렸다가 비교한다)
+@SpringBootTest(properties = {
+        "member.search.index.enabled=true",
+        "spring.datasource.generate-unique-name=true"})
+class MemberSearchIndexTest {
+
+    @Autowired EntityManager em;
+    @Autowired MemberRepository memberRepository;
+    @Autowired MemberSearchIndex memberSearchIndex;
+    @Autowired SqlStatementCounter sqlStatementCounter;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        queryFactory = new JPAQueryFactory(em);
+        tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Random random = new Random(7);
+            for (int i = 0; i < 2000; i++) {
+                double r = random.nextDouble();
+                Team team = r < 0.7 ? teamA : r < 0.95 ? teamB : null;
+                em.persist(new Member("member" + (i % 500), 10 + random.nextInt(60), team));
+            }
+            return null;
+        });
+        memberSearchIndex.invalidate();
+        awaitIndex();
+    }
+
+    @AfterEach
+    public void after(){
+        tx.execute(status -> {
+            queryFactory.delete(member).execute();
+            queryFactory.delete(team).execute();
+            queryFactory.delete(teamStats).execute();
+            return null;
+        });
+    }
+
+    @Test
+    public void sameAsDatabase(){
+        assertSameAsDatabase(condition(null, null, null, null), 0);
+        assertSameAsDatabase(condition(null, null, null, null), 95);
+        assertSameAsDatabase(condition("member7", null, null, null), 0);
+        assertSameAsDatabase(condition(null, "teamA", 20, 30), 0);
+        assertSameAsDatabase(condition(null, "teamA", 20, 30), 7);
+        assertSameAsDatabase(condition(null, "teamB", null, 15), 0);
+        assertSameAsDatabase(condition("member3", "teamA", 20, null), 0);
+        assertSameAsDatabase(condition(null, "none", null, null), 0);
+        assertSameAsDatabase(condition(null, null, 100, null), 0);
+    }
+
+    //세 글자 이상은 trigram 후보만, 두 글자 이하는 그 글자(앞부분이면 앞 글자)의 행으로 찾는다
+    @Test
+    public void usernameLikeSameAsDatabase(){
+        assertSameAsDatabase(like("member4", null), 0);
+        assertSameAsDatabase(like("member4", null), 3);
+        assertSameAsDatabase(like(null, "r12"), 0);
+        assertSameAsDatabase(like(null, "12"), 0);
+        assertSameAsDatabase(like("m", "9"), 2);
+        assertSameAsDatabase(like("ember", null), 0);
+        assertSameAsDatabase(like(null, "zzz"), 0);
+        MemberSearchCondition combined = like("member1", "5");
+        combined.setTeamName("teamA");
+        combined.setAgeGoe(30);
+        assertSameAsDatabase(combined, 0);
+    }
+
+    @Test
+    public void syncRenameForLike(){
+        assertSameAsDatabase(like(null, "ember7"), 0);
+        tx.execute(status -> {
+            queryFactory.selectFrom(member).where(member.username.eq("member7")).fetch()
+                    .forEach(m -> m.setUsername("renamed7"));
+            return null;
+        });
+        assertSameAsDatabase(like(null, "ember7"), 0);
+        assertSameAsDatabase(like("renamed", null), 0);
+        assertSameAsDatabase(like(null, "med7"), 0);
+    }
+
+    //글자 1~2개 검색은 흔한 글자(BitSet)와 드문 글자(행 목록) 모두 이름 변경/삭제를 따라간다
+    @Test
+    public void syncShortPatterns(){
+        assertSameAsDatabase(like("m", null), 0);
+        assertSameAsDatabase(like(null, "7"), 0);
+        assertSameAsDatabase(like(null, "r7"), 0);
+        tx.execute(status -> {
+            queryFactory.selectFrom(member).where(member.username.eq("member7")).fetch()
+                    .forEach(m -> m.setUsername("renamed7"));
+            queryFactory.selectFrom(member).where(member.username.eq("member17")).fetch()
+                    .forEach(em::remove);
+            return null;
+        });
+        assertSameAsDatabase(like("m", null), 0);
+        assertSameAsDatabase(like("re", null), 0);
+        assertSameAsDatabase(like(null, "7"), 0);
+        assertSameAsDatabase(like(null, "r7"), 0);
+        assertSameAsDatabase(like(null, "d7"), 0);
+    }
+
+    //건수는 인덱스에서 구하므로 페이지를 채우는 쿼리 하나만 나간다
+    @Test
+    public void oneQueryPerPage(){
+        MemberSearchCondition condition = condition(null, "teamA", 20, 30);
+        memberRepository.searchPageComplex(condition, PageRequest.of(0, 20));
+
+        sqlStatementCounter.start();
+        Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(3, 20));
+        assertThat(sqlStatementCounter.stop().getSelects()).isEqualTo(1);
+        assertThat(page.getContent()).hasSize(20);
+    }
+
+    @Test
+    public void syncEntityChanges(){
+        MemberSearchCondition condition = condition(null, "teamA", 20, 30);
+        assertSameAsDatabase(condition, 0);
+
+        tx.execute(status -> {
+            List<Member> members = queryFactory.selectFrom(member).orderBy(member.id.asc()).limit(10).fetch();
+            Team teamB = queryFactory.selectFrom(team).where(team.name.eq("teamB")).fetchOne();
+            members.get(0).setAge(25);
+            members.get(1).changeTeam(teamB);
+            members.get(2).setUsername("renamed");
+            em.remove(members.get(3));
+            em.persist(new Member("newMember", 25, members.get(4).getTeam()));
+            return null;
+        });
+        assertSameAsDatabase(condition, 0);
+        assertSameAsDatabase(condition("renamed", null, null, null), 0);
+        assertSameAsDatabase(condition("newMember", null, null, null), 0);
+
+        //팀 이름이 바뀌면 그 팀 회원 전체가 새 이름으로 검색된다
+        tx.execute(status -> {
+            queryFactory.selectFrom(team).where(team.name.eq("teamB")).fetchOne().setName("teamC");
+            return null;
+        });
+        assertSameAsDatabase(condition(null, "teamB", null, null), 0);
+        assertSameAsDatabase(condition(null, "teamC", null, null), 0);
+    }
+
+    //엔티티 변경은 다시 읽지 않고 반영한다
+    @Test
+    public void entityDeleteKeepsIndex(){
+        tx.execute(status -> {
+            em.remove(queryFactory.selectFrom(member).orderBy(member.id.asc()).limit(1).fetchOne());
+            return null;
+        });
+        assertThat(memberSearchIndex.usage().isLoaded()).isTrue();
+        assertThat(memberSearchIndex.usage().getMembers()).isEqualTo(1999);
+        assertSameAsDatabase(condition(null, null, null, null), 0);
+    }
+
+    //벌크 연산은 인덱스를 비우고, 다시 읽는 동안은 DB 로 조회한다 (search 가 null)
+    @Test
+    public void bulkUpdate(){
+        MemberSearchCondition condition = condition(null, null, 30, 40);
+        assertSameAsDatabase(condition, 0);
+        tx.execute(status -> queryFactory.update(member).set(member.age, member.age.add(5)).execute());
+        assertThat(memberSearchIndex.usage().isLoaded()).isFalse();
+        assertThat(memberSearchIndex.search(condition, 0, 20)).isNull();
+        assertSameAsDatabase(condition, 0);
+
+        //팀(FK)으로 거른 벌크 update
+        Long teamBId = queryFactory.select(team.id).from(team).where(team.name.eq("teamB")).fetchOne();
+        tx.execute(status -> queryFactory.update(member).set(member.age, 99).where(member.team.id.eq(teamBId)).execute());
+        assertThat(memberSearchIndex.usage().isLoaded()).isFalse();
+        assertSameAsDatabase(condition(null, "teamB", 99, null), 0);
+
+        //id 하나를 지우는 벌크 delete
+        Long firstId = queryFactory.select(member.id.min()).from(member).fetchOne();
+        tx.execute(status -> queryFactory.delete(member).where(member.id.eq(firstId)).execute());
+        assertThat(memberSearchIndex.usage().isLoaded()).isFalse();
+        assertSameAsDatabase(condition(null, null, null, null), 0);
+    }
+
+    @Test
+    public void rollback(){
+        MemberSearchCondition condition = condition(null, null, 30, 40);
+        assertSameAsDatabase(condition, 0);
+        tx.execute(status -> {
+            queryFactory.selectFrom(member).where(member.age.between(30, 40)).fetch().forEach(m -> m.setAge(99));
+            em.flush();
+            status.setRollbackOnly();
+            return null;
+        });
+        assertSameAsDatabase(condition, 0);
+    }
+
+    //회원 2000명으로 잰 크기를 백만명으로 늘려서 출력한다
+    @Test
+    public void memoryPerMillionMembers(){
+        memberRepository.searchPageComplex(condition(null, null, null, null), PageRequest.of(0, 10));
+
+        MemberSearchIndex.Usage usage = memberSearchIndex.usage();
+        System.out.printf("member index : members=%d estimatedBytes=%d bytesPerMillionMembers=%d (%.1f MB)%n",
+                usage.getMembers(), usage.getEstimatedBytes(), usage.getBytesPerMillionMembers(),
+                usage.getBytesPerMillionMembers() / 1024.0 / 1024.0);
+        assertThat(usage.isLoaded()).isTrue();
+        assertThat(usage.getMembers()).isEqualTo(2000);
+        assertThat(usage.getBytesPerMillionMembers()).isBetween(30_000_000L, 300_000_000L);
+    }
+
+    private void assertSameAsDatabase(MemberSearchCondition condition, int page) {
+        awaitIndex();
+        assertThat(memberSearchIndex.search(condition, 0, 1)).isNotNull();
+        PageRequest pageable = PageRequest.of(page, 20);
+        Page<MemberTeamDto> indexed = memberRepository.searchPageComplex(condition, pageable);
+
+        List<MemberTeamDto> expected = tx.execute(status -> queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(conditions(condition))
+                .orderBy(member.id.asc())
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetch());
+        long total = tx.execute(status -> {
+            JPAQuery<Member> count = queryFactory.selectFrom(member).where(conditions(condition));
+            if (condition.getTeamName() != null) {
+                count.join(member.team, team);
+            }
+            return count.fetchCount();
+        });
+        assertThat(indexed.getContent()).usingRecursiveFieldByFieldElementComparator().isEqualTo(expected);
+        assertThat(indexed.getTotalElements()).isEqualTo(total);
+    }
+
+    private void awaitIndex() {
+        if (memberSearchIndex.usage().isLoaded()) {
+            return;
+        }
+        try {
+            memberSearchIndex.rebuild().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MemberSearchCondition like(String usernamePrefix, String usernameContains) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernamePrefix(usernamePrefix);
+        condition.setUsernameContains(usernameContains);
+        return condition;
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -0,0 +1,136 @@
+package com.study.querydsl.config;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.repository.MemberJpaRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.study.querydsl.entity.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+//원본/복제본 H2 두개로 라우팅 확인. 복제는 H2ReplicaSync.sync() 를 부를때만 된다
+@SpringBootTest(properties = {
+        "datasource.routing.enabled=true",
+        "spring.datasource.url=" + DataSourceRoutingTest.PRIMARY_URL,
+        "datasource.replica.url=" + DataSourceRoutingTest.REPLICA_URL,
+        "datasource.routing.primary-methods=MemberJpaRepository.findAllByIds"})
+class DataSourceRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired EntityManager em;
+    @Autowired DataSource dataSource;
+    @Autowired MemberJpaRepository memberJpaRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired ReadYourWritesFilter readYourWritesFilter;
+
+    H2ReplicaSync replicaSync = new H2ReplicaSync(PRIMARY_URL, REPLICA_URL);
+    ReplicaRoutingDataSource routing;
+    TransactionTemplate tx;
+
+    @BeforeEach
+    public void before() throws Exception {
+        routing = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        routing.setReadYourWrites(Duration.ZERO);
+        tx = new TransactionTemplate(transactionManager);
+        replicaSync.sync();
+    }
+
+    @AfterEach
+    public void after(){
+        tx.execute(status -> new JPAQueryFactory(em).delete(member).execute());
+    }
+
+    //쓰기는 원본, 읽기 전용은 복제본 - 복제 전에는 복제본에서 안보인다
+    @Test
+    public void readOnlyGoesToReplica(){
+        save("member1");
+
+        assertThat(memberJpaRepository.findAll()).isEmpty();
+        replicaSync.sync();
+        assertThat(memberJpaRepository.findAll()).extracting("username").containsExactly("member1");
+    }
+
+    //primary-methods 에 적은 메서드는 복제 전에도 원본에서 읽는다
+    @Test
+    public void primaryMethod(){
+        Long id = save("member1");
+
+        assertThat(memberJpaRepository.findAllByIds(Collections.singletonList(id))).extracting("username").containsExactly("member1");
+        assertThat(memberJpaRepository.findAll()).isEmpty();
+    }
+
+    //쓰기 커밋 직후에는 읽기도 원본으로 간다
+    @Test
+    public void readYourWrites(){
+        routing.setReadYourWrites(Duration.ofMinutes(1));
+        save("member1");
+
+        assertThat(memberJpaRepository.findAll()).extracting("username").containsExactly("member1");
+    }
+
+    //read-your-writes 는 클라이언트마다 따로 - 쓴 클라이언트는 쿠키로 원본에서 읽고 다른 클라이언트는 복제본에서 읽는다
+    @Test
+    public void readYourWritesPerClient() throws Exception {
+        routing.setReadYourWrites(Duration.ofMinutes(1));
+        MockHttpServletResponse written = new MockHttpServletResponse();
+        readYourWritesFilter.doFilter(new MockHttpServletRequest(), written, (request, response) -> save("member1"));
+        Cookie lastWrite = written.getCookie(ReadYourWritesFilter.COOKIE);
+        assertThat(lastWrite).isNotNull();
+
+        assertThat(findAllAs(null)).isEmpty();
+        assertThat(findAllAs(lastWrite)).extracting("username").containsExactly("member1");
+        //미래 시각은 무시한다
+        assertThat(findAllAs(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(Long.MAX_VALUE)))).isEmpty();
+    }
+
+    //복제본 커넥션을 못 얻으면 원본에서 읽는다
+    @Test
+    @DirtiesContext
+    public void replicaDown(){
+        save("member1");
+        ((HikariDataSource) routing.getReplica()).close();
+
+        assertThat(memberJpaRepository.findAll()).extracting("username").containsExactly("member1");
+        assertThat(routing.currentRoute()).isEqualTo(ReplicaRoutingDataSource.Route.PRIMARY);
+    }
+
+    private List<Member> findAllAs(Cookie cookie) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (cookie != null) {
+            request.setCookies(cookie);
+        }
+        List<Member> found = new ArrayList<>();
+        readYourWritesFilter.doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> found.addAll(memberJpaRepository.findAll()));
+        return found;
+    }
+
+    private Long save(String username) {
+        Member saved = new Member(username, 10);
+        tx.execute(status -> {
+            memberJpaRepository.save(saved);
+            return null;
+        });
+        return saved.getId();
+    }
+}
@@ -0,0 +1,47 @@
+package com.study.querydsl.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//테스트용 복제 - 원본 H2 를 SCRIPT 로 떠서 복제본에 RUNSCRIPT 로 그대로 다시 만든다
+//sync() 를 부르기 전까지 복제본은 예전 상태로 남아있으므로 복제 지연을 흉내낼 수 있다
+class H2ReplicaSync {
+
+    private final String primaryUrl;
+    private final String replicaUrl;
+
+    H2ReplicaSync(String primaryUrl, String replicaUrl) {
+        this.primaryUrl = primaryUrl;
+        this.replicaUrl = replicaUrl;
+    }
+
+    void sync() {
+        File script = null;
+        try {
+            script = File.createTempFile("replica", ".sql");
+            String path = script.getAbsolutePath().replace("'", "''");
+            try (Connection primary = DriverManager.getConnection(primaryUrl, "sa", "");
+                 Statement statement = primary.createStatement()) {
+                statement.execute("SCRIPT TO '" + path + "'");
+            }
+            try (Connection replica = DriverManager.getConnection(replicaUrl, "sa", "");
+                 Statement statement = replica.createStatement()) {
+                statement.execute("DROP ALL OBJECTS");
+                statement.execute("RUNSCRIPT FROM '" + path + "'");
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("복제 실패", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (script != null) {
+                script.delete();
+            }
+        }
+    }
+}
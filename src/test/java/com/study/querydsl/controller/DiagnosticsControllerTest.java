@@ -0,0 +1,100 @@
+package com.study.querydsl.controller;
+
+import com.study.querydsl.dto.MemberCursor;
+import com.study.querydsl.dto.MemberSearchCondition;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//조건이 하나라도 있으면 풀스캔 없이 인덱스를 타야 한다
+@SpringBootTest(properties = {
+        "spring.profiles.active=local",
+        "spring.datasource.generate-unique-name=true",
+        "init.member.count=2000",
+        "init.team.count=10"})
+class DiagnosticsControllerTest {
+
+    @Autowired DiagnosticsController diagnosticsController;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void plans(){
+        List<Map<String, Object>> plans = diagnosticsController.plans(new MemberSearchCondition());
+
+        assertThat(plans).hasSize(16);
+        for (int shape = 1; shape < 16; shape++) {
+            for (Map<String, Object> query : (List<Map<String, Object>>) plans.get(shape).get("queries")) {
+                assertThat((Collection<String>) query.get("fullScans")).as("shape %d : %s", shape, query.get("sql")).isEmpty();
+            }
+        }
+        //팀 + 나이 범위는 (team_id, age) 복합 인덱스
+        Map<String, Object> teamAndAge = ((List<Map<String, Object>>) plans.get(2 | 4 | 8).get("queries")).get(0);
+        assertThat((Collection<String>) teamAndAge.get("indexes")).contains("IDX_TEAM_NAME", "IDX_MEMBER_TEAM_AGE");
+    }
+
+    //요청 값은 SQL 에 들어가지 않고 바인딩된다
+    @Test
+    @SuppressWarnings("unchecked")
+    public void parametersAreBound(){
+        MemberSearchCondition sample = new MemberSearchCondition();
+        sample.setUsername("x' or '1'='1");
+
+        Map<String, Object> query = ((List<Map<String, Object>>) diagnosticsController.plans(sample).get(1).get("queries")).get(0);
+
+        assertThat((String) query.get("sql")).doesNotContain("'1'='1");
+        assertThat((List<Object>) query.get("parameters")).contains("x' or '1'='1");
+        assertThat((Collection<String>) query.get("indexes")).contains("IDX_MEMBER_USERNAME");
+    }
+
+    //키셋 슬라이스는 (age, member_id) 인덱스 순서로 읽어서 정렬/풀스캔 없이 멈춘다
+    @Test
+    @SuppressWarnings("unchecked")
+    public void slicePlans(){
+        List<Map<String, Object>> queries = diagnosticsController.slicePlans(new MemberSearchCondition(), null);
+
+        Map<String, Object> firstPage = queries.get(0);
+        assertThat((Collection<String>) firstPage.get("indexes")).contains("IDX_MEMBER_AGE_ID");
+        assertThat((Collection<String>) firstPage.get("fullScans")).isEmpty();
+        assertThat((String) firstPage.get("plan")).contains("/* index sorted */");
+    }
+
+    //뒤쪽 커서도 인덱스를 커서 나이부터 범위로 읽어서 앞쪽 행을 다시 읽지 않는다 (회원 2000명, 나이 0~99)
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deepCursorSeeks(){
+        String cursor = new MemberCursor(90, 0L).encode();
+
+        for (Map<String, Object> query : diagnosticsController.slicePlans(new MemberSearchCondition(), cursor)) {
+            String plan = (String) query.get("plan");
+            assertThat(plan).contains("/* PUBLIC.IDX_MEMBER_AGE_ID: AGE >= ?1 */", "/* index sorted */");
+            assertThat(memberScanCount(plan)).isLessThanOrEqualTo(21 + 20);
+        }
+    }
+
+    //FROM member 다음에 나오는 첫번째 scanCount 가 member 테이블에서 읽은 행 수
+    private static int memberScanCount(String plan) {
+        Matcher matcher = Pattern.compile("scanCount: (\\d+)").matcher(plan);
+        assertThat(matcher.find()).isTrue();
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    //팀 조건이 있어도 (age, member_id) 순서로 읽으면서 조인한 팀 이름으로 거른다 (MemberPredicateGuard 의 추정 방식)
+    @Test
+    public void teamSlicePlan(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(10);
+
+        String plan = (String) diagnosticsController.slicePlans(condition, null).get(0).get("plan");
+
+        assertThat(plan).contains("/* PUBLIC.IDX_MEMBER_AGE_ID: AGE >= ?2 */", "/* index sorted */");
+    }
+}
@@ -0,0 +1,52 @@
+package com.study.querydsl.controller;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+
+//샘플데이터가 다른 테스트에 섞이지 않도록 별도 DB 를 쓴다
+@SpringBootTest(properties = {
+        "spring.profiles.active=local",
+        "spring.datasource.generate-unique-name=true",
+        "init.member.count=2000",
+        "init.team.count=5",
+        "init.team.skew=1.0",
+        "init.batch-size=100",
+        "init.commit-size=700"
+})
+@Transactional
+class InitMemberTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Test
+    public void zipfSeeding(){
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+
+        List<Tuple> teamSizes = queryFactory
+                .select(team.name, member.count())
+                .from(member)
+                .join(member.team, team)
+                .groupBy(team.name)
+                .orderBy(team.name.asc())
+                .fetch();
+
+        assertThat(queryFactory.selectFrom(member).fetchCount()).isEqualTo(2000);
+        assertThat(teamSizes).hasSize(5);
+        //skew=1 이면 teamA 가 가장 크고 teamE 가 가장 작다
+        long first = teamSizes.get(0).get(member.count());
+        long last = teamSizes.get(4).get(member.count());
+        assertThat(first).isGreaterThan(last * 3);
+    }
+}
@@ -0,0 +1,170 @@
+package com.study.querydsl.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamBinaryCodec;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//JSON 외의 응답 방식도 기존 응답과 같은 내용이어야 한다
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+class MemberControllerTest {
+
+    @Autowired EntityManager em;
+    @Autowired MemberController memberController;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired MockMvc mvc;
+
+    @BeforeEach
+    public void before(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30));
+    }
+
+    @Test
+    public void raw() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        memberController.searchMemberRaw(condition, response);
+
+        assertThat(response.getContentType()).startsWith("application/json");
+        assertThat(rows(response.getContentAsString()))
+                .hasSize(3)
+                .containsExactlyInAnyOrderElementsOf(rows(objectMapper.writeValueAsString(memberController.searchMemberV1(condition))));
+    }
+
+    //Accept 로 바이너리를 요청하면 같은 페이지가 바이너리로 온다
+    @Test
+    public void binary() throws Exception {
+        byte[] body = mvc.perform(get("/v2/members").param("ageGoe", "10").param("page", "0").param("size", "2")
+                        .accept(MemberTeamBinaryCodec.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MemberTeamBinaryCodec.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        Page<MemberTeamDto> page = MemberTeamBinaryCodec.decode(body);
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        assertThat(page.getContent()).containsExactlyElementsOf(memberController.searchMemberV2(condition, PageRequest.of(0, 2)).getContent());
+        assertThat(page.getTotalElements()).isEqualTo(3);
+
+        mvc.perform(get("/v2/members").param("ageGoe", "10"))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    //화이트리스트 파라미터만 조건이 되고 (id 는 무시) 응답의 nextCursor 로 다음 페이지를 받는다
+    @Test
+    public void v4KeysetPaging() throws Exception {
+        Map<String, Object> first = json(mvc.perform(get("/v4/members")
+                        .param("teamName", "teamA").param("age", "10", "99").param("id", "0").param("size", "1"))
+                .andExpect(status().isOk()));
+        assertThat(usernames(first)).containsExactly("member1");
+        assertThat(first.get("hasNext")).isEqualTo(true);
+
+        Map<String, Object> second = json(mvc.perform(get("/v4/members")
+                        .param("teamName", "teamA").param("age", "10", "99").param("id", "0").param("size", "1")
+                        .param("cursor", (String) first.get("nextCursor")))
+                .andExpect(status().isOk()));
+        assertThat(usernames(second)).containsExactly("member2");
+        assertThat(second.get("hasNext")).isEqualTo(false);
+
+        Map<String, Object> like = json(mvc.perform(get("/v4/members")
+                        .param("username", "*ber3*").param("age", "0", "99"))
+                .andExpect(status().isOk()));
+        assertThat(usernames(like)).containsExactly("member3");
+
+        Map<String, Object> prefix = json(mvc.perform(get("/v4/members").param("username", "member2*"))
+                .andExpect(status().isOk()));
+        assertThat(usernames(prefix)).containsExactly("member2");
+    }
+
+    //커서 페이징의 size 도 member.predicate.max-page-size(기본 100) 까지
+    @Test
+    public void sliceSizeLimit() throws Exception {
+        Map<String, Object> slice = json(mvc.perform(get("/v2/members/slice").param("size", "2"))
+                .andExpect(status().isOk()));
+        assertThat(usernames(slice)).containsExactly("member1", "member2");
+        mvc.perform(get("/v2/members/slice").param("size", "1000"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/v3/members/slice").param("size", String.valueOf(Integer.MAX_VALUE)))
+                .andExpect(status().isBadRequest());
+    }
+
+    //offset 페이징은 page x size 가 int 를 넘으면 400 (setFirstResult 에서 잘려서 다른 페이지가 나가지 않게)
+    @Test
+    public void offsetOverflow() throws Exception {
+        String page = String.valueOf(Integer.MAX_VALUE / 10 + 1);
+        mvc.perform(get("/v2/members").param("page", page).param("size", "10"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/v3/members").param("page", page).param("size", "10").param("paging", "DEFERRED_JOIN"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/v2/members").param("page", String.valueOf(Integer.MAX_VALUE / 10)).param("size", "10"))
+                .andExpect(status().isOk());
+    }
+
+    //인덱스를 못 쓰는 조건만 있거나 페이지가 너무 크면 실행하지 않는다
+    @Test
+    public void v4Rejected() throws Exception {
+        mvc.perform(get("/v4/members").param("username", "*member*"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/v4/members").param("username", "*1"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/v4/members").param("age", "10", "20", "30"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/v4/members").param("age", "10").param("size", "1000"))
+                .andExpect(status().isBadRequest());
+        Map<String, Object> badCursor = json(mvc.perform(get("/v4/members").param("cursor", "!"))
+                .andExpect(status().isBadRequest()));
+        assertThat(badCursor.get("message")).isEqualTo("잘못된 커서입니다");
+    }
+
+    private Map<String, Object> json(ResultActions result) throws Exception {
+        return objectMapper.readValue(result.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8),
+                new TypeReference<Map<String, Object>>() {});
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> usernames(Map<String, Object> slice) {
+        List<Object> usernames = new ArrayList<>();
+        for (Map<String, Object> row : (List<Map<String, Object>>) slice.get("content")) {
+            usernames.add(row.get("username"));
+        }
+        return usernames;
+    }
+
+    private List<Map<String, Object>> rows(String json) throws Exception {
+        return objectMapper.readValue(json, new TypeReference<List<Map<String, Object>>>() {});
+    }
+}
@@ -0,0 +1,80 @@
+package com.study.querydsl.dto;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberTeamBinaryCodecTest {
+
+    List<MemberTeamDto> content = Arrays.asList(
+            new MemberTeamDto(1L, "member1", 10, 100L, "teamA"),
+            new MemberTeamDto(2L, "회원2", 20, 100L, "teamA"),
+            new MemberTeamDto(3L, null, -1, 200L, "teamB"),
+            new MemberTeamDto(Long.MAX_VALUE, "", 0, null, null));
+
+    @Test
+    public void listRoundTrip() throws Exception {
+        Page<MemberTeamDto> decoded = MemberTeamBinaryCodec.decode(MemberTeamBinaryCodec.encode(content));
+
+        assertThat(decoded.getContent()).containsExactlyElementsOf(content);
+        assertThat(decoded.getPageable().isPaged()).isFalse();
+    }
+
+    @Test
+    public void pageRoundTrip() throws Exception {
+        Page<MemberTeamDto> page = new PageImpl<>(content, PageRequest.of(3, 4), 100);
+
+        Page<MemberTeamDto> decoded = MemberTeamBinaryCodec.decode(MemberTeamBinaryCodec.encode(page));
+
+        assertThat(decoded.getContent()).containsExactlyElementsOf(content);
+        assertThat(decoded.getNumber()).isEqualTo(3);
+        assertThat(decoded.getSize()).isEqualTo(4);
+        assertThat(decoded.getTotalElements()).isEqualTo(100);
+    }
+
+    //팀 이름은 팀마다 한번만 들어간다
+    @Test
+    public void teamDictionary() {
+        String encoded = new String(MemberTeamBinaryCodec.encode(content), StandardCharsets.ISO_8859_1);
+
+        assertThat(encoded.split("teamA", -1)).hasSize(2);
+        assertThat(encoded.split("teamB", -1)).hasSize(2);
+    }
+
+    //길이/개수/팀 번호를 믿지 않는다 - 배열을 미리 잡거나 인덱스 예외 대신 IOException
+    @Test
+    public void malformedInput() {
+        //팀 0개인데 행의 팀 번호가 5
+        assertMalformed('M', 1, 0, 0, 1, 2, 0, 20, 5);
+        //문자열 길이 2^31 (실제 바이트는 없다)
+        assertMalformed('M', 1, 0, 0, 1, 2, 0x81, 0x80, 0x80, 0x80, 0x08);
+        //행 2^31 - 1 개라고 하고 끝난다
+        assertMalformed('M', 1, 0, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+        //팀 수가 int 범위를 넘는다
+        assertMalformed('M', 1, 0, 0x80, 0x80, 0x80, 0x80, 0x10);
+        //페이지 크기 0
+        assertMalformed('M', 1, 1, 0, 0, 0, 0, 0);
+        //나이가 int 범위를 넘는다
+        assertMalformed('M', 1, 0, 0, 1, 2, 0, 0x80, 0x80, 0x80, 0x80, 0x10, 0);
+        byte[] encoded = MemberTeamBinaryCodec.encode(content);
+        assertThatThrownBy(() -> MemberTeamBinaryCodec.decode(Arrays.copyOf(encoded, encoded.length - 3)))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static void assertMalformed(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        assertThatThrownBy(() -> MemberTeamBinaryCodec.decode(bytes)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,45 @@
+package com.study.querydsl.metrics;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.platform.commons.support.AnnotationSupport;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+//테스트 메서드(없으면 클래스)의 @SqlBudget 보다 select 가 많이 나가면 테스트를 실패시킨다
+//@SpringBootTest 클래스에 @ExtendWith(SqlBudgetExtension.class) 로 붙인다.
+public class SqlBudgetExtension implements BeforeEachCallback, AfterEachCallback {
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        if (budget(context).isPresent()) {
+            counter(context).start();
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        Optional<SqlBudget> budget = budget(context);
+        if (!budget.isPresent()) {
+            return;
+        }
+        int selects = counter(context).stop().getSelects();
+        if (selects > budget.get().value()) {
+            fail(String.format("SQL 예산 초과: %s 에서 select %d번 (허용 %d번)",
+                    context.getDisplayName(), selects, budget.get().value()));
+        }
+    }
+
+    private static Optional<SqlBudget> budget(ExtensionContext context) {
+        Optional<SqlBudget> budget = AnnotationSupport.findAnnotation(context.getTestMethod(), SqlBudget.class);
+        return budget.isPresent() ? budget : AnnotationSupport.findAnnotation(context.getTestClass(), SqlBudget.class);
+    }
+
+    private static SqlStatementCounter counter(ExtensionContext context) {
+        return SpringExtension.getApplicationContext(context).getBean(SqlStatementCounter.class);
+    }
+}
@@ -1,21 +1,36 @@
 package com.study.querydsl.repository;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.cache.MemberSearchCache;
 import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamColumns;
 import com.study.querydsl.dto.MemberTeamDto;
 import com.study.querydsl.entity.Member;
 import com.study.querydsl.entity.Team;
 import org.assertj.core.api.Assertions;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityManager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,6 +40,9 @@ class MemberJpaRepositoryTest {
     @Autowired
     EntityManager em;
     @Autowired MemberJpaRepository memberJpaRepository;
+    @Autowired MemberSearchCache memberSearchCache;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired ObjectMapper objectMapper;
 
     @Test
     public void basicTest(){
@@ -83,4 +101,338 @@ class MemberJpaRepositoryTest {
 
         assertThat(result).extracting("username").containsExactly("member3","member4");
     }
-}
\ No newline at end of file
+
+    //컬럼형 결과는 search 와 같은 행을 담고 팀 이름은 사전 하나로 공유한다
+    @Test
+    public void searchColumnsTest() throws Exception {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        MemberTeamColumns columns = memberJpaRepository.searchColumns(condition, 2);
+
+        List<MemberTeamDto> rows = new ArrayList<>();
+        for (MemberTeamColumns.Row row : columns) {
+            rows.add(row.toDto());
+        }
+        assertThat(rows).containsExactlyInAnyOrderElementsOf(memberJpaRepository.search(condition));
+        assertThat(columns.getTeamNames()).containsExactlyInAnyOrder("teamA", "teamB");
+        assertThat(objectMapper.writeValueAsString(columns)).isEqualTo(objectMapper.writeValueAsString(rows));
+    }
+
+    //팀 조건이 없으면 team 조인 없이 조회하므로 팀이 없는 회원도 그대로 나온다
+    @Test
+    public void searchMemberTest(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        Member member1 = new Member("member1",10,teamA);
+        Member member2 = new Member("member2",20);
+        em.persist(member1);
+        em.persist(member2);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        assertThat(memberJpaRepository.searchMember(condition)).containsExactly(member1, member2);
+
+        condition.setTeamName("teamA");
+        assertThat(memberJpaRepository.searchMember(condition)).containsExactly(member1);
+    }
+
+    //팀까지 쓰는 경우 NONE 은 1 + 팀 수, WITH_TEAM 은 회원/팀 수와 상관없이 1번
+    @Test
+    public void searchMemberFetchPlanTest(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 6; i++) {
+            em.persist(new Member("member" + i, 10 + i, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+
+        assertThat(countStatements(() -> memberJpaRepository.searchMember(condition, FetchPlan.NONE)
+                .forEach(m -> m.getTeam().getName()))).isEqualTo(3);
+        em.clear();
+        assertThat(countStatements(() -> memberJpaRepository.searchMember(condition, FetchPlan.WITH_TEAM)
+                .forEach(m -> m.getTeam().getName()))).isEqualTo(1);
+        em.clear();
+
+        //Team.members 는 @BatchSize 로 팀 수와 상관없이 한번에 가져온다
+        assertThat(countStatements(() -> em.createQuery("select t from Team t", Team.class).getResultList()
+                .forEach(t -> t.getMembers().size()))).isEqualTo(2);
+    }
+
+    //쓰기 트랜잭션에 참여하면 조회한 엔티티를 고칠 수 있다
+    @Test
+    public void searchMemberInWriteTransactionTest(){
+        em.persist(new Member("member1", 10));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("member1");
+        Member findMember = memberJpaRepository.searchMember(condition).get(0);
+        assertThat(em.unwrap(Session.class).isReadOnly(findMember)).isFalse();
+
+        findMember.setAge(20);
+        em.flush();
+        em.clear();
+        assertThat(memberJpaRepository.findById(findMember.getId()).get().getAge()).isEqualTo(20);
+    }
+
+    //읽기 전용 트랜잭션에서 가져온 엔티티는 읽기 전용이라 값을 바꿔도 update 가 나가지 않는다
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void searchMemberReadOnlyTest(){
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+        Long memberId = tx.execute(status -> {
+            Member member = new Member("member1", 10);
+            em.persist(member);
+            return member.getId();
+        });
+        try {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername("member1");
+            readOnlyTx.execute(status -> {
+                Member findMember = memberJpaRepository.searchMember(condition).get(0);
+                assertThat(em.unwrap(Session.class).isReadOnly(findMember)).isTrue();
+                em.clear();
+                Member byId = memberJpaRepository.findAllByIds(Collections.singletonList(memberId)).get(0);
+                assertThat(em.unwrap(Session.class).isReadOnly(byId)).isTrue();
+                return null;
+            });
+            readOnlyTx.execute(status -> {
+                memberJpaRepository.searchMember(condition).get(0).setAge(20);
+                return null;
+            });
+            int age = tx.execute(status -> em.find(Member.class, memberId).getAge());
+            assertThat(age).isEqualTo(10);
+        } finally {
+            tx.execute(status -> new JPAQueryFactory(em).delete(member).execute());
+        }
+    }
+
+    //요청 순서대로 돌려주고 512개씩 나눠서 조회한다
+    @Test
+    public void findAllByIdsTest(){
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Member member = new Member("member" + i, i % 100);
+            em.persist(member);
+            ids.add(member.getId());
+        }
+        em.flush();
+        em.clear();
+
+        List<Long> requested = new ArrayList<>(ids);
+        Collections.reverse(requested);
+        requested.add(2, -1L);
+        assertThat(countStatements(() -> assertThat(memberJpaRepository.findAllByIds(requested))
+                .extracting("id")
+                .containsExactlyElementsOf(requested.stream().filter(id -> id > 0).collect(Collectors.toList()))))
+                .isEqualTo(2);
+    }
+
+    //in 절 파라미터 개수를 2의 거듭제곱으로 맞추므로 3개, 4개 조회는 같은 쿼리 플랜을 쓴다
+    @Test
+    public void findAllByIdsPaddingTest(){
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Member member = new Member("member" + i, 10);
+            em.persist(member);
+            ids.add(member.getId());
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        boolean enabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        try {
+            memberJpaRepository.findAllByIds(ids.subList(0, 3));
+            statistics.clear();
+            assertThat(memberJpaRepository.findAllByIds(ids.subList(0, 3))).hasSize(3);
+            assertThat(memberJpaRepository.findAllByIds(ids)).hasSize(4);
+            assertThat(statistics.getQueryPlanCacheMissCount()).isZero();
+        } finally {
+            statistics.setStatisticsEnabled(enabled);
+        }
+    }
+
+    private long countStatements(Runnable runnable) {
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        boolean enabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            runnable.run();
+            return statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(enabled);
+        }
+    }
+
+    @Test
+    public void streamSearchTest(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("member" + i, i * 10, i % 2 == 0 ? teamA : teamB));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        List<MemberTeamDto> result = new ArrayList<>();
+        memberJpaRepository.streamSearch(condition, 2, result::add);
+
+        assertThat(result).extracting("username")
+                .containsExactly("member1", "member3", "member5", "member7", "member9");
+    }
+
+    //조건 모양 16가지 모두 캐시된 JPQL 결과가 builder 방식과 같아야 한다
+    @Test
+    public void searchTemplateShapesTest(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("member" + (i % 5), i * 10, i % 2 == 0 ? teamA : teamB));
+        }
+        em.persist(new Member("member1", 30));
+
+        for (int shape = 0; shape < 16; shape++) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            if ((shape & 1) != 0) condition.setUsername("member1");
+            if ((shape & 2) != 0) condition.setTeamName("teamB");
+            if ((shape & 4) != 0) condition.setAgeGoe(10);
+            if ((shape & 8) != 0) condition.setAgeLoe(60);
+
+            assertThat(memberJpaRepository.search(condition))
+                    .as("shape %d", shape)
+                    .containsExactlyInAnyOrderElementsOf(memberJpaRepository.searchByBuilder(condition));
+        }
+    }
+
+    //앞부분/일부 검색은 %, _ 를 글자 그대로 찾는다
+    @Test
+    public void searchUsernameLikeTest(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member_1", 10, teamA));
+        em.persist(new Member("memberx1", 20, teamA));
+        em.persist(new Member("my%member", 30, teamA));
+        em.persist(new Member("other", 40, teamA));
+
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("member_");
+        MemberSearchCondition contains = new MemberSearchCondition();
+        contains.setUsernameContains("%mem");
+        MemberSearchCondition both = new MemberSearchCondition();
+        both.setUsernamePrefix("me");
+        both.setUsernameContains("x1");
+
+        for (MemberSearchCondition condition : Arrays.asList(prefix, contains, both)) {
+            assertThat(memberJpaRepository.search(condition))
+                    .containsExactlyInAnyOrderElementsOf(memberJpaRepository.searchByBuilder(condition));
+        }
+        assertThat(memberJpaRepository.search(prefix)).extracting("username").containsExactly("member_1");
+        assertThat(memberJpaRepository.search(contains)).extracting("username").containsExactly("my%member");
+        assertThat(memberJpaRepository.search(both)).extracting("username").containsExactly("memberx1");
+    }
+
+    //캐시는 커밋된 데이터만 담으므로 트랜잭션 없이 각 단계를 따로 커밋하면서 확인한다
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void searchCacheTest(){
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+        Long member1Id = tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Member member1 = new Member("member1", 10, teamA);
+            em.persist(member1);
+            em.persist(new Member("member2", 20, teamB));
+            return member1.getId();
+        });
+        try {
+            MemberSearchCondition teamACondition = new MemberSearchCondition();
+            teamACondition.setTeamName("teamA");
+            MemberSearchCondition teamBCondition = new MemberSearchCondition();
+            teamBCondition.setTeamName("teamB");
+            MemberSearchCondition ageCondition = new MemberSearchCondition();
+            ageCondition.setAgeGoe(15);
+            ageCondition.setUsername("");
+
+            List<MemberTeamDto> teamA = memberJpaRepository.search(teamACondition);
+            List<MemberTeamDto> teamB = memberJpaRepository.search(teamBCondition);
+            List<MemberTeamDto> age = memberJpaRepository.search(ageCondition);
+            long hits = memberSearchCache.stats().hitCount();
+            assertThat(memberJpaRepository.search(teamACondition)).isSameAs(teamA);
+            assertThat(memberJpaRepository.search(ageCondition)).isSameAs(age);
+            assertThat(memberSearchCache.stats().hitCount()).isEqualTo(hits + 2);
+            //같은 행을 여러 요청이 나눠 쓰므로 바꿀 수 없다
+            assertThrows(UnsupportedOperationException.class, () -> teamA.get(0).setAge(99));
+            assertThrows(UnsupportedOperationException.class, () -> teamA.set(0, teamB.get(0)));
+
+            //teamA 의 member1 이 15살 이상이 되면 teamA, 나이 조건 엔트리만 지워진다
+            tx.execute(status -> {
+                em.find(Member.class, member1Id).setAge(30);
+                return null;
+            });
+            assertThat(memberJpaRepository.search(teamBCondition)).isSameAs(teamB);
+            assertThat(memberJpaRepository.search(teamACondition)).extracting("age").containsExactly(30);
+            assertThat(memberJpaRepository.search(ageCondition)).extracting("username")
+                    .containsExactlyInAnyOrder("member1", "member2");
+
+            //벌크 연산은 이벤트가 없으므로 전부 지운다
+            tx.execute(status -> queryFactory
+                    .update(member)
+                    .set(member.age, 40)
+                    .where(member.username.eq("member2"))
+                    .execute());
+            assertThat(memberJpaRepository.search(teamBCondition)).extracting("age").containsExactly(40);
+
+            //엔티티 하나를 고칠때와 SQL 모양이 같은 (외래키/id 로 거르는) 벌크 연산도 전부 지운다
+            Long teamBId = memberJpaRepository.search(teamBCondition).get(0).getTeamId();
+            tx.execute(status -> queryFactory
+                    .update(member)
+                    .set(member.age, 50)
+                    .where(member.team.id.eq(teamBId))
+                    .execute());
+            assertThat(memberJpaRepository.search(teamBCondition)).extracting("age").containsExactly(50);
+            tx.execute(status -> queryFactory
+                    .update(team)
+                    .set(team.name, "teamC")
+                    .where(team.id.eq(teamBId))
+                    .execute());
+            assertThat(memberJpaRepository.search(teamBCondition)).isEmpty();
+        } finally {
+            tx.execute(status -> {
+                queryFactory.delete(member).execute();
+                queryFactory.delete(team).execute();
+                return null;
+            });
+        }
+        assertThat(memberSearchCache.size()).isZero();
+    }
+}
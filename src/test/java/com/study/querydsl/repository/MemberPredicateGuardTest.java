@@ -0,0 +1,118 @@
+package com.study.querydsl.repository;
+
+import com.study.querydsl.cache.MemberStatisticsCache;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+
+import static com.study.querydsl.entity.QMember.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//이름 5가지 x 400명, 나이 0~99 고르게. 읽는 행 추정치가 100 을 넘으면 거절한다
+@SpringBootTest(properties = "member.predicate.max-scan-rows=100")
+@Transactional
+class MemberPredicateGuardTest {
+
+    @Autowired EntityManager em;
+    @Autowired MemberPredicateGuard memberPredicateGuard;
+    @Autowired MemberStatisticsCache memberStatisticsCache;
+    @Autowired TeamStatsRepository teamStatsRepository;
+
+    @BeforeEach
+    public void before(){
+        for (int i = 0; i < 2000; i++) {
+            em.persist(new Member("member" + (i % 5), i % 100));
+        }
+        em.flush();
+        memberStatisticsCache.refresh();
+    }
+
+    @Test
+    public void toCondition(){
+        MemberSearchCondition condition = MemberPredicateGuard.toCondition(member.username.startsWith("mem")
+                .and(member.age.goe(10)).and(member.age.eq(20)).and(member.team.name.eq("teamA")));
+
+        assertThat(condition.getUsernamePrefix()).isEqualTo("mem");
+        assertThat(condition.getAgeGoe()).isEqualTo(20);
+        assertThat(condition.getAgeLoe()).isEqualTo(20);
+        assertThat(condition.getTeamName()).isEqualTo("teamA");
+
+        assertThatThrownBy(() -> MemberPredicateGuard.toCondition(member.username.eq("a").or(member.age.eq(1))))
+                .isInstanceOf(RejectedPredicateException.class);
+        assertThatThrownBy(() -> MemberPredicateGuard.toCondition(member.id.eq(1L)))
+                .isInstanceOf(RejectedPredicateException.class);
+    }
+
+    @Test
+    public void estimatedScanRows(){
+        //(age, member_id) 인덱스 순서로 읽으므로 한 페이지만 읽는다
+        assertThat(memberPredicateGuard.check(member.age.goe(0), 20).getAgeGoe()).isEqualTo(0);
+        //이름이 같은 400명을 모두 읽어서 정렬해야 한다
+        assertThatThrownBy(() -> memberPredicateGuard.check(member.username.eq("member1"), 20))
+                .isInstanceOf(RejectedPredicateException.class);
+        //일부 검색은 페이지를 채울때까지 (20+1) / 0.005 행을 읽는다고 본다
+        assertThatThrownBy(() -> memberPredicateGuard.check(member.age.goe(0).and(member.username.contains("1")), 20))
+                .isInstanceOf(RejectedPredicateException.class);
+        //나이로 충분히 좁히면 그 안에서 모두 읽어도 된다
+        assertThat(memberPredicateGuard.check(member.age.goe(98).and(member.username.contains("1")), 20)
+                .getUsernameContains()).isEqualTo("1");
+        assertThatThrownBy(() -> memberPredicateGuard.check(member.username.contains("1"), 20))
+                .isInstanceOf(RejectedPredicateException.class);
+    }
+
+    //앞부분 검색은 고정 선택도가 아니라 username 인덱스에서 실제로 세어본다
+    @Test
+    public void prefixScanRows(){
+        for (int i = 0; i < 3; i++) {
+            em.persist(new Member("rare" + i, i));
+        }
+        em.flush();
+
+        //2000명이 모두 "m" 으로 시작한다
+        assertThatThrownBy(() -> memberPredicateGuard.check(member.username.startsWith("m"), 20))
+                .isInstanceOf(RejectedPredicateException.class);
+        assertThatThrownBy(() -> memberPredicateGuard.check(member.username.startsWith("member1"), 20))
+                .isInstanceOf(RejectedPredicateException.class);
+        assertThat(memberPredicateGuard.check(member.username.startsWith("rare"), 20)
+                .getUsernamePrefix()).isEqualTo("rare");
+        assertThat(memberPredicateGuard.check(member.username.eq("rare1").and(member.age.goe(0)), 20)
+                .getUsername()).isEqualTo("rare1");
+    }
+
+    //팀 조건은 나이 순서로 읽으면서 거르므로 작은 팀일수록 많이 읽는다
+    @Test
+    public void teamScanRows(){
+        Team rare = new Team("rare");
+        Team big = new Team("big");
+        em.persist(rare);
+        em.persist(big);
+        for (int i = 0; i < 1000; i++) {
+            em.persist(new Member("big" + i, i % 100, big));
+        }
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("rare" + i, i, rare));
+        }
+        em.flush();
+        teamStatsRepository.rebuild();
+        memberStatisticsCache.refresh();
+
+        //회원 3분의 1이 big 이므로 (20+1) x 3 행쯤 읽으면 한 페이지가 찬다
+        assertThat(memberPredicateGuard.check(member.team.name.eq("big"), 20).getTeamName()).isEqualTo("big");
+        //rare 10명은 페이지를 못 채우므로 나이 인덱스를 끝까지 읽는다
+        assertThatThrownBy(() -> memberPredicateGuard.check(member.team.name.eq("rare"), 20))
+                .isInstanceOf(RejectedPredicateException.class);
+        assertThatThrownBy(() -> memberPredicateGuard.check(member.team.name.eq("none"), 20))
+                .isInstanceOf(RejectedPredicateException.class);
+        //나이 범위로 좁히면 그 범위만 읽는다
+        assertThat(memberPredicateGuard.check(member.team.name.eq("rare").and(member.age.loe(1)), 20)
+                .getTeamName()).isEqualTo("rare");
+    }
+}
@@ -0,0 +1,139 @@
+package com.study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.cache.MemberCountCache;
+import com.study.querydsl.config.CountQueryExecutor;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import com.study.querydsl.metrics.SqlStatementCounter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+
+//카운트 쿼리는 다른 트랜잭션에서 돌기 때문에 커밋된 데이터로 테스트하고 끝나면 지운다
+@SpringBootTest(properties = {
+        "member.search.parallel-count=true",
+        "spring.datasource.generate-unique-name=true"})
+class MemberRepositoryParallelCountTest {
+
+    @Autowired EntityManager em;
+    @Autowired MemberRepository memberRepository;
+    @Autowired MemberCountCache memberCountCache;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired DataSource dataSource;
+    @Autowired CountQueryExecutor countQueryExecutor;
+    @Autowired SqlStatementCounter sqlStatementCounter;
+
+    TransactionTemplate tx;
+    MemberSearchCondition condition;
+
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("member" + i, 10 + i, teamA));
+            }
+            return null;
+        });
+        condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+    }
+
+    @AfterEach
+    public void after(){
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+        tx.execute(status -> {
+            queryFactory.delete(member).execute();
+            queryFactory.delete(team).execute();
+            return null;
+        });
+    }
+
+    @Test
+    public void parallelCount(){
+        Page<MemberTeamDto> first = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2));
+
+        assertThat(first.getContent()).extracting("username").containsExactly("member0", "member1");
+        assertThat(first.getTotalElements()).isEqualTo(5);
+        assertThat(memberCountCache.getIfPresent(condition)).isEqualTo(5);
+
+        //마지막 페이지는 카운트 없이 offset + 컨텐츠 수로 끝난다
+        memberCountCache.invalidateAll();
+        Page<MemberTeamDto> last = memberRepository.searchPageComplex(condition, PageRequest.of(2, 2));
+        assertThat(last.getContent()).extracting("username").containsExactly("member4");
+        assertThat(last.getTotalElements()).isEqualTo(5);
+    }
+
+    //쓰기 트랜잭션 안에서는 커밋 안된 데이터까지 세도록 같은 트랜잭션에서 순차로 센다
+    @Test
+    public void writeTransactionCountsSequentially(){
+        long total = tx.execute(status -> {
+            Team teamA = memberRepository.findAll().get(0).getTeam();
+            em.persist(new Member("member5", 15, teamA));
+            status.setRollbackOnly();
+            return memberRepository.searchPageComplex(condition, PageRequest.of(0, 2)).getTotalElements();
+        });
+
+        assertThat(total).isEqualTo(6);
+    }
+
+    //커넥션 풀(기본 최대 10개)에 2 x count-pool-size(기본 4) = 8개 이상 남아있을때만 병렬로 센다
+    //아니면 요청 스레드에서 순차로 세므로 현재 스레드에서 select 가 2번 나간다
+    @Test
+    public void sequentialWithoutSpareConnections() throws Exception {
+        assertThat(countQueryExecutor.hasSpareConnections()).isTrue();
+        assertThat(selectsOnCurrentThread()).isEqualTo(1);
+
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                held.add(dataSource.getConnection());
+            }
+            assertThat(countQueryExecutor.hasSpareConnections()).isFalse();
+            assertThat(selectsOnCurrentThread()).isEqualTo(2);
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+        assertThat(countQueryExecutor.hasSpareConnections()).isTrue();
+
+        //최대 크기가 2 x count-pool-size 보다 작으면 항상 순차
+        CountQueryExecutor oversized = new CountQueryExecutor(transactionManager, dataSource, 6, 100);
+        try {
+            assertThat(oversized.hasSpareConnections()).isFalse();
+        } finally {
+            oversized.destroy();
+        }
+    }
+
+    private int selectsOnCurrentThread() {
+        memberCountCache.invalidateAll();
+        sqlStatementCounter.start();
+        Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2));
+        int selects = sqlStatementCounter.stop().getSelects();
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        return selects;
+    }
+}
@@ -1,12 +1,21 @@
 package com.study.querydsl.repository;
 
+import com.study.querydsl.cache.MemberCountCache;
 import com.study.querydsl.dto.MemberSearchCondition;
 import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.dto.MemberTeamSlice;
 import com.study.querydsl.entity.Member;
 import com.study.querydsl.entity.QMember;
 import com.study.querydsl.entity.Team;
+import com.study.querydsl.metrics.RepositoryMetricsAspect;
+import com.study.querydsl.metrics.SqlBudget;
+import com.study.querydsl.metrics.SqlBudgetExtension;
+import com.study.querydsl.metrics.SqlStatementCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
@@ -15,6 +24,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 
+import java.time.Duration;
 import java.util.List;
 
 import static com.study.querydsl.entity.QMember.member;
@@ -23,6 +33,8 @@ import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 @Transactional
+@ExtendWith(SqlBudgetExtension.class)
+@SqlBudget(2)
 class MemberRepositoryTest {
 
     @Autowired
@@ -31,6 +43,15 @@ class MemberRepositoryTest {
     @Autowired
     MemberRepository memberRepository;
 
+    @Autowired
+    MemberCountCache memberCountCache;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    SqlStatementCounter sqlStatementCounter;
+
     @Test
     public void basicTest(){
         Member member = new Member("member1", 10);
@@ -96,6 +117,135 @@ class MemberRepositoryTest {
         assertThat(result.getContent()).extracting("username").containsExactly("member1","member2","member3");
     }
 
+    //카운트+컨텐츠, 컨텐츠(카운트 캐시), insert 후 카운트+컨텐츠
+    @Test
+    @SqlBudget(5)
+    public void searchPageComplexCountCache(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 4; i++) {
+            em.persist(new Member("member" + i, 10 + i, teamA));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        PageRequest pageRequest = PageRequest.of(0, 3);
+
+        Page<MemberTeamDto> first = memberRepository.searchPageComplex(condition, pageRequest);
+        long hits = memberCountCache.getHits();
+        Page<MemberTeamDto> second = memberRepository.searchPageComplex(condition, pageRequest);
+
+        assertThat(first.getTotalElements()).isEqualTo(4);
+        assertThat(second.getTotalElements()).isEqualTo(4);
+        assertThat(memberCountCache.getHits()).isEqualTo(hits + 1);
+
+        //insert 가 나가면 캐시가 비워져서 새 카운트를 본다
+        em.persist(new Member("member4", 14, teamA));
+        Page<MemberTeamDto> third = memberRepository.searchPageComplex(condition, pageRequest);
+
+        assertThat(third.getTotalElements()).isEqualTo(5);
+    }
+
+    //id 먼저 조회 후 채우는 방식도 OFFSET 과 같은 페이지를 같은 순서로 돌려준다
+    @Test
+    @SqlBudget(6)
+    public void searchPageDeferredJoin(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 7; i++) {
+            em.persist(new Member("member" + i, 10 + i, i % 3 == 0 ? teamB : teamA));
+        }
+        em.persist(new Member("member7", 17));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(11);
+        PageRequest pageRequest = PageRequest.of(1, 3);
+
+        Page<MemberTeamDto> offset = memberRepository.searchPageComplex(condition, pageRequest, PagingStrategy.OFFSET);
+        Page<MemberTeamDto> deferred = memberRepository.searchPageComplex(condition, pageRequest, PagingStrategy.DEFERRED_JOIN);
+
+        assertThat(deferred.getContent()).extracting("username").containsExactly("member4", "member5", "member6");
+        assertThat(deferred.getContent()).isEqualTo(offset.getContent());
+        assertThat(deferred.getTotalElements()).isEqualTo(7);
+
+        //마지막 페이지, 팀 조건
+        condition.setTeamName("teamA");
+        Page<MemberTeamDto> last = memberRepository.searchPageComplex(condition, PageRequest.of(1, 3), PagingStrategy.DEFERRED_JOIN);
+        assertThat(last.getContent()).extracting("username").containsExactly("member5");
+        assertThat(last.getTotalElements()).isEqualTo(4);
+    }
+
+    @Test
+    public void searchSlice(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        Member member1 = new Member("member1",10,teamA);
+        Member member2 = new Member("member2",20,teamA);
+        Member member3 = new Member("member3",30,teamB);
+        Member member4 = new Member("member4",40,teamB);
+
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        MemberTeamSlice first = memberRepository.searchSlice(condition, null, 3);
+
+        assertThat(first.getContent()).extracting("username").containsExactly("member1","member2","member3");
+        assertThat(first.isHasNext()).isTrue();
+
+        MemberTeamSlice second = memberRepository.searchSlice(condition, first.getNextCursor(), 3);
+
+        assertThat(second.getContent()).extracting("username").containsExactly("member4");
+        assertThat(second.isHasNext()).isFalse();
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    //쿼리 timeout 은 초 단위로 올린다 (0초가 되면 제한이 없어진다)
+    @Test
+    public void timeoutSeconds(){
+        assertThat(MemberRepositoryImpl.timeoutSeconds(Duration.ofMillis(1))).isEqualTo(1);
+        assertThat(MemberRepositoryImpl.timeoutSeconds(Duration.ofMillis(499))).isEqualTo(1);
+        assertThat(MemberRepositoryImpl.timeoutSeconds(Duration.ofMillis(1000))).isEqualTo(1);
+        assertThat(MemberRepositoryImpl.timeoutSeconds(Duration.ofMillis(1001))).isEqualTo(2);
+        assertThat(MemberRepositoryImpl.timeoutSeconds(Duration.ofSeconds(2))).isEqualTo(2);
+        assertThrows(IllegalArgumentException.class, () -> MemberRepositoryImpl.timeoutSeconds(Duration.ZERO));
+    }
+
+    //메서드별 타이머와 행 수가 한번씩만 기록되고 SQL 수도 센다
+    @Test
+    public void searchMetrics(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 4; i++) {
+            em.persist(new Member("member" + i, 10 + i, teamA));
+        }
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        String method = "MemberRepositoryImpl.searchPageSimple";
+        long before = registry.find(RepositoryMetricsAspect.TIMER).tag("method", method).timers().stream()
+                .mapToLong(Timer::count).sum();
+
+        sqlStatementCounter.start();
+        memberRepository.searchPageSimple(condition, PageRequest.of(0, 3));
+        SqlStatementCounter.Counts counts = sqlStatementCounter.stop();
+
+        assertThat(registry.find(RepositoryMetricsAspect.TIMER).tag("method", method).timer().count())
+                .isEqualTo(before + 1);
+        assertThat(registry.find(RepositoryMetricsAspect.ROWS).tag("method", method).summary().max())
+                .isEqualTo(3);
+        //카운트 + 컨텐츠
+        assertThat(counts.getSelects()).isEqualTo(2);
+    }
+
     //QueryDslPredicate를 사용해서 파라미터에 바로 조건을 줘서 할 수 있다
     //단순한 쿼리면 상관이 없지만 조인이 두개이상들어가는 곳에서는 사용할 수 없다
     @Test
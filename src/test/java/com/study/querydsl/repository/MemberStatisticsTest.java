@@ -0,0 +1,183 @@
+package com.study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.cache.MemberStatisticsCache;
+import com.study.querydsl.dto.EstimatedPage;
+import com.study.querydsl.dto.MemberSearchCondition;
+import com.study.querydsl.dto.MemberTeamDto;
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import com.study.querydsl.metrics.SqlStatementCounter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
+import static com.study.querydsl.entity.QTeamStats.teamStats;
+import static com.study.querydsl.repository.MemberSearchPredicates.conditions;
+import static com.study.querydsl.repository.MemberSearchPredicates.needsTeamJoin;
+import static org.assertj.core.api.Assertions.assertThat;
+
+//통계 추정치와 실제 카운트를 비교해서 오차(q-error = max(추정/실제, 실제/추정))를 출력한다
+//팀 회원 수는 커밋할때 TeamStats 에 반영되므로 커밋된 데이터로 테스트하고 끝나면 지운다
+@SpringBootTest(properties = "spring.datasource.generate-unique-name=true")
+class MemberStatisticsTest {
+
+    @Autowired EntityManager em;
+    @Autowired MemberRepository memberRepository;
+    @Autowired MemberStatisticsCache memberStatisticsCache;
+    @Autowired SqlStatementCounter sqlStatementCounter;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    JPAQueryFactory queryFactory;
+
+    //팀은 60% / 30% / 5%, 나머지 5% 는 팀 없음. 나이는 35 근처에 몰린 정규분포, 이름은 1000 가지
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        queryFactory = new JPAQueryFactory(em);
+        tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            Team teamC = new Team("teamC");
+            em.persist(teamA);
+            em.persist(teamB);
+            em.persist(teamC);
+            Random random = new Random(42);
+            for (int i = 0; i < 3000; i++) {
+                double r = random.nextDouble();
+                Team team = r < 0.6 ? teamA : r < 0.9 ? teamB : r < 0.95 ? teamC : null;
+                int age = (int) Math.max(1, Math.min(90, Math.round(35 + random.nextGaussian() * 12)));
+                em.persist(new Member("member" + (i % 1000), age, team));
+                if (i % 500 == 499) {
+                    em.flush();
+                    em.clear();
+                    teamA = em.find(Team.class, teamA.getId());
+                    teamB = em.find(Team.class, teamB.getId());
+                    teamC = em.find(Team.class, teamC.getId());
+                }
+            }
+            return null;
+        });
+        memberStatisticsCache.refresh();
+    }
+
+    @AfterEach
+    public void after(){
+        tx.execute(status -> {
+            queryFactory.delete(member).execute();
+            queryFactory.delete(team).execute();
+            queryFactory.delete(teamStats).execute();
+            return null;
+        });
+    }
+
+    @Test
+    public void singleColumnError(){
+        assertThat(qError(condition(null, null, null, null))).isEqualTo(1.0);
+        assertThat(qError(condition("member7", null, null, null))).isEqualTo(1.0);
+        assertThat(qError(condition(null, "teamA", null, null))).isEqualTo(1.0);
+        assertThat(qError(condition(null, "teamC", null, null))).isEqualTo(1.0);
+        assertThat(qError(condition(null, "none", null, null))).isEqualTo(1.0);
+
+        //히스토그램 구간 안에서 고르게 퍼져있다고 보는 만큼만 틀린다
+        assertThat(qError(condition(null, null, 30, 40))).isLessThan(1.1);
+        assertThat(qError(condition(null, null, 20, 25))).isLessThan(1.25);
+        assertThat(qError(condition(null, null, 60, null))).isLessThan(1.5);
+        assertThat(qError(condition(null, null, null, 18))).isLessThan(1.5);
+        assertThat(qError(condition(null, null, 35, 35))).isLessThan(1.5);
+    }
+
+    //팀과 나이는 서로 독립으로 만들었으므로 곱해도 크게 틀리지 않는다
+    @Test
+    public void combinedError(){
+        assertThat(qError(condition(null, "teamA", 30, 40))).isLessThan(1.2);
+        assertThat(qError(condition(null, "teamB", 20, 25))).isLessThan(1.5);
+        assertThat(qError(condition(null, "teamC", null, 30))).isLessThan(1.5);
+        assertThat(qError(condition("member7", "teamA", null, null))).isLessThan(2.0);
+    }
+
+    @Test
+    public void estimatedPage(){
+        MemberSearchCondition condition = condition(null, "teamA", 30, 40);
+
+        Page<MemberTeamDto> first = memberRepository.searchPageEstimated(condition, PageRequest.of(0, 10), PagingStrategy.OFFSET);
+        assertThat(first.getContent()).hasSize(10);
+        assertThat(((EstimatedPage<MemberTeamDto>) first).isTotalEstimated()).isTrue();
+        assertThat(first.getTotalElements()).isEqualTo(memberStatisticsCache.estimate(condition));
+
+        //덜 찬 마지막 페이지는 읽은 건수로 정확히 안다
+        long exact = count(condition);
+        Page<MemberTeamDto> last = memberRepository.searchPageEstimated(condition,
+                PageRequest.of((int) (exact / 10), 10), PagingStrategy.OFFSET);
+        assertThat(((EstimatedPage<MemberTeamDto>) last).isTotalEstimated()).isFalse();
+        assertThat(last.getTotalElements()).isEqualTo(exact);
+    }
+
+    //오래된 통계는 요청 스레드가 다시 모으지 않는다. 이전 통계를 바로 돌려주고 전용 스레드에서 모은다
+    @Test
+    public void staleRefreshInBackground(){
+        long total = memberStatisticsCache.current().getTotal();
+        //3000명의 10% 를 넘게 바꾼다
+        tx.execute(status -> {
+            for (int i = 0; i < 400; i++) {
+                em.persist(new Member("new" + i, 30));
+            }
+            return null;
+        });
+
+        sqlStatementCounter.start();
+        long estimate = memberStatisticsCache.estimate(new MemberSearchCondition());
+        int selects = sqlStatementCounter.stop().getSelects();
+
+        assertThat(selects).isEqualTo(0);
+        assertThat(estimate).isEqualTo(total);
+        try {
+            memberStatisticsCache.refreshAsync().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        assertThat(memberStatisticsCache.current().getTotal()).isEqualTo(total + 400);
+    }
+
+    private double qError(MemberSearchCondition condition) {
+        long estimate = memberStatisticsCache.estimate(condition);
+        long exact = count(condition);
+        double qError = Math.max(Math.max(estimate, 1), Math.max(exact, 1))
+                / (double) Math.min(Math.max(estimate, 1), Math.max(exact, 1));
+        System.out.printf("estimate %s : estimated=%d exact=%d q-error=%.3f%n", condition, estimate, exact, qError);
+        return qError;
+    }
+
+    private long count(MemberSearchCondition condition) {
+        return tx.execute(status -> {
+            JPAQuery<Member> query = queryFactory.selectFrom(member).where(conditions(condition));
+            if (needsTeamJoin(condition)) {
+                query.join(member.team, team);
+            }
+            return query.fetchCount();
+        });
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
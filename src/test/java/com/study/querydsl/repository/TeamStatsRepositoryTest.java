@@ -0,0 +1,237 @@
+package com.study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.study.querydsl.dto.TeamStatsDto;
+import com.study.querydsl.entity.Member;
+import com.study.querydsl.entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.study.querydsl.entity.QMember.member;
+import static com.study.querydsl.entity.QTeam.team;
+import static com.study.querydsl.entity.QTeamStats.teamStats;
+import static org.assertj.core.api.Assertions.assertThat;
+
+//TeamStats 는 커밋 직전에 갱신되므로 커밋된 데이터로 테스트하고 끝나면 지운다
+//매번 member 를 group by 한 결과와 같은지 비교한다
+@SpringBootTest(properties = "spring.datasource.generate-unique-name=true")
+class TeamStatsRepositoryTest {
+
+    @Autowired EntityManager em;
+    @Autowired TeamStatsRepository teamStatsRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    JPAQueryFactory queryFactory;
+    Long teamAId;
+    Long teamBId;
+
+    @BeforeEach
+    public void before(){
+        tx = new TransactionTemplate(transactionManager);
+        queryFactory = new JPAQueryFactory(em);
+        tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            em.persist(new Member("member1", 10, teamA));
+            em.persist(new Member("member2", 20, teamA));
+            em.persist(new Member("member3", 30, teamB));
+            em.persist(new Member("member4", 40, teamB));
+            teamAId = teamA.getId();
+            teamBId = teamB.getId();
+            return null;
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        tx.execute(status -> {
+            queryFactory.delete(member).execute();
+            queryFactory.delete(team).execute();
+            queryFactory.delete(teamStats).execute();
+            return null;
+        });
+    }
+
+    @Test
+    public void insert(){
+        assertMatchesGroupBy();
+        TeamStatsDto teamA = teamStatsRepository.findAll().get(0);
+        assertThat(teamA.getTeamName()).isEqualTo("teamA");
+        assertThat(teamA.getMemberCount()).isEqualTo(2);
+        assertThat(teamA.getAverageAge()).isEqualTo(15.0);
+        assertThat(teamA.getMinAge()).isEqualTo(10);
+        assertThat(teamA.getMaxAge()).isEqualTo(20);
+    }
+
+    //가장 어린 회원의 나이가 바뀌면 최소값을 다시 구한다
+    @Test
+    public void changeAge(){
+        tx.execute(status -> {
+            findMember("member1").setAge(25);
+            return null;
+        });
+        assertMatchesGroupBy();
+        assertThat(teamStatsRepository.findAll().get(0).getMinAge()).isEqualTo(20);
+    }
+
+    @Test
+    public void changeTeam(){
+        tx.execute(status -> {
+            findMember("member4").changeTeam(em.find(Team.class, teamAId));
+            em.persist(new Member("member5", 50, em.find(Team.class, teamBId)));
+            return null;
+        });
+        assertMatchesGroupBy();
+    }
+
+    //회원이 모두 빠진 팀은 0명, 최소/최대 null
+    @Test
+    public void delete(){
+        tx.execute(status -> {
+            em.remove(findMember("member3"));
+            em.remove(findMember("member4"));
+            return null;
+        });
+        assertMatchesGroupBy();
+        TeamStatsDto teamB = teamStatsRepository.findAll().get(1);
+        assertThat(teamB.getMemberCount()).isEqualTo(0);
+        assertThat(teamB.getMinAge()).isNull();
+    }
+
+    //엔티티 삭제는 다시 집계하지 않고 그 팀만 갱신한다
+    //다른 팀 행을 일부러 틀리게 해두고 그대로 남는지 본다 (TeamStats 벌크 update 는 다시 집계하지 않는다)
+    @Test
+    public void deleteWithoutRebuild(){
+        tx.execute(status -> queryFactory.update(teamStats).set(teamStats.memberCount, 99L)
+                .where(teamStats.teamId.eq(teamBId)).execute());
+        tx.execute(status -> {
+            em.remove(findMember("member1"));
+            return null;
+        });
+        List<TeamStatsDto> stats = teamStatsRepository.findAll();
+        assertThat(stats.get(0).getMemberCount()).isEqualTo(1);
+        assertThat(stats.get(0).getMinAge()).isEqualTo(20);
+        assertThat(stats.get(1).getMemberCount()).isEqualTo(99);
+    }
+
+    //벌크 연산은 이벤트가 없으므로 커밋 직전에 다시 집계된다
+    @Test
+    public void bulkUpdate(){
+        tx.execute(status -> {
+            queryFactory.update(member).set(member.age, member.age.add(1)).execute();
+            em.persist(new Member("member5", 5, em.find(Team.class, teamAId)));
+            return null;
+        });
+        assertMatchesGroupBy();
+        assertThat(teamStatsRepository.findAll().get(0).getMinAge()).isEqualTo(5);
+    }
+
+    //팀(FK)이나 id 로 거른 벌크 연산도 다시 집계한다
+    @Test
+    public void filteredBulkWrite(){
+        tx.execute(status -> queryFactory.update(member).set(member.age, 5).where(member.team.id.eq(teamBId)).execute());
+        assertMatchesGroupBy();
+        assertThat(teamStatsRepository.findAll().get(1).getMaxAge()).isEqualTo(5);
+
+        Long member1Id = findMember("member1").getId();
+        tx.execute(status -> queryFactory.delete(member).where(member.id.eq(member1Id)).execute());
+        assertMatchesGroupBy();
+        assertThat(teamStatsRepository.findAll().get(0).getMinAge()).isEqualTo(20);
+    }
+
+    //롤백되면 그대로
+    @Test
+    public void rollback(){
+        List<TeamStatsDto> before = teamStatsRepository.findAll();
+        tx.execute(status -> {
+            findMember("member1").setAge(99);
+            em.flush();
+            status.setRollbackOnly();
+            return null;
+        });
+        assertThat(teamStatsRepository.findAll()).isEqualTo(before);
+    }
+
+    //행이 없는 팀에 두 트랜잭션이 동시에 회원을 넣어도 둘 다 커밋되고 한 행만 만들어진다
+    @Test
+    public void concurrentFirstWrites(){
+        for (int round = 0; round < 5; round++) {
+            tx.execute(status -> queryFactory.delete(teamStats).where(teamStats.teamId.eq(teamAId)).execute());
+            CountDownLatch flushed = new CountDownLatch(2);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                String username = "concurrent" + round + "-" + i;
+                writes.add(executor.submit(() -> tx.execute(status -> {
+                    em.persist(new Member(username, 50, em.find(Team.class, teamAId)));
+                    em.flush();
+                    //둘 다 TeamStats 행이 없는 상태에서 커밋하도록 맞춘다
+                    flushed.countDown();
+                    await(flushed);
+                    return null;
+                })));
+            }
+            try {
+                for (Future<?> write : writes) {
+                    write.get(30, TimeUnit.SECONDS);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            } finally {
+                executor.shutdownNow();
+            }
+            assertMatchesGroupBy();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Member findMember(String username) {
+        return queryFactory.selectFrom(member).where(member.username.eq(username)).fetchOne();
+    }
+
+    private void assertMatchesGroupBy() {
+        List<Tuple> grouped = tx.execute(status -> queryFactory
+                .select(team.id, team.name, member.count(), member.age.avg(), member.age.min(), member.age.max())
+                .from(team)
+                .leftJoin(team.members, member)
+                .groupBy(team.id, team.name)
+                .orderBy(team.name.asc())
+                .fetch());
+        List<String> expected = grouped.stream()
+                .map(t -> t.get(team.id) + ":" + t.get(team.name) + ":" + t.get(member.count())
+                        + ":" + (t.get(member.count()) == 0 ? 0.0 : t.get(member.age.avg()))
+                        + ":" + t.get(member.age.min()) + ":" + t.get(member.age.max()))
+                .collect(Collectors.toList());
+        List<String> actual = teamStatsRepository.findAll().stream()
+                .map(s -> s.getTeamId() + ":" + s.getTeamName() + ":" + s.getMemberCount()
+                        + ":" + s.getAverageAge() + ":" + s.getMinAge() + ":" + s.getMaxAge())
+                .collect(Collectors.toList());
+        assertThat(actual).isEqualTo(expected);
+    }
+}